@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("org.jetbrains.kotlin.jvm") version "1.9.25"
     id("org.jetbrains.intellij") version "1.17.4"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "de.dontknow"
@@ -13,6 +14,24 @@ repositories {
 dependencies{
     implementation("com.fasterxml.jackson.core:jackson-databind:2.18.3")
     implementation("io.projectreactor:reactor-core:3.6.0")
+    implementation("org.brotli:dec:0.1.2")
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher:1.10.2")
+}
+
+// Benchmarks of the polling hot path, run with ./gradlew jmh
+configurations.named("jmhImplementation") {
+    // the platform classes the plugin compiles against are needed to load it outside the IDE
+    extendsFrom(configurations.compileOnly.get())
+}
+
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    profilers.add("gc")
+    resultFormat.set("JSON")
 }
 
 // Configure Gradle IntelliJ Plugin
@@ -35,6 +54,10 @@ tasks {
         kotlinOptions.jvmTarget = "17"
     }
 
+    test {
+        useJUnitPlatform()
+    }
+
     patchPluginXml {
         sinceBuild.set("241")
         untilBuild.set("253.*")
@@ -0,0 +1,32 @@
+plugins {
+    id("java")
+    application
+}
+
+group = "de.dontknow"
+version = "1.0.9"
+
+repositories {
+    mavenCentral()
+}
+dependencies {
+    implementation("com.fasterxml.jackson.core:jackson-databind:2.18.3")
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher:1.10.2")
+}
+
+application {
+    mainClass.set("de.dontknow.gitlabpipelines.relay.PipelineRelay")
+}
+
+tasks {
+    withType<JavaCompile> {
+        sourceCompatibility = "17"
+        targetCompatibility = "17"
+    }
+
+    test {
+        useJUnitPlatform()
+    }
+}
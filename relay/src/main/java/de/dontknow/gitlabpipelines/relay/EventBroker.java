@@ -0,0 +1,77 @@
+package de.dontknow.gitlabpipelines.relay;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fans webhook events out to the server sent event streams subscribed to their instance, project and ref.
+ */
+class EventBroker {
+
+    private static final Logger LOG = Logger.getLogger(EventBroker.class.getName());
+
+    private final Map<WebhookEvent.Key, Set<EventClient>> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Keeps the exchange open as event stream until the client goes away.
+     */
+    void subscribe(WebhookEvent.Key key, HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        var client = new EventClient(exchange);
+        clients.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(client);
+        // tells the client the subscription is active
+        send(key, client, ": subscribed\n\n");
+    }
+
+    void publish(WebhookEvent event, String data) {
+        var subscribers = clients.get(event.key());
+        if (subscribers == null) return;
+        subscribers.forEach(client -> send(event.key(), client, "event: " + event.kind() + "\ndata: " + data + "\n\n"));
+    }
+
+    /**
+     * Writes a comment to every stream, so dead connections are noticed and idle proxies keep them open.
+     */
+    void heartbeat() {
+        clients.forEach((key, subscribers) -> subscribers.forEach(client -> send(key, client, ": keepalive\n\n")));
+    }
+
+    int clientCount() {
+        return clients.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private void send(WebhookEvent.Key key, EventClient client, String message) {
+        try {
+            client.send(message);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Dropping event stream client of " + key, e);
+            client.close();
+            clients.computeIfPresent(key, (k, subscribers) -> {
+                subscribers.remove(client);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+    }
+
+    private record EventClient(HttpExchange exchange) {
+
+        synchronized void send(String message) throws IOException {
+            var body = exchange.getResponseBody();
+            body.write(message.getBytes(StandardCharsets.UTF_8));
+            body.flush();
+        }
+
+        void close() {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package de.dontknow.gitlabpipelines.relay;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Receives gitlab pipeline and job webhooks and pushes them to the IDEs as server sent events, so they
+ * do not have to poll gitlab for every change.
+ * <ul>
+ *     <li>{@code POST /webhook} the url to configure as gitlab webhook with pipeline and job events</li>
+ *     <li>{@code GET /events?instance=<gitlab url>&project=<id>&ref=<ref>} event stream of one ref of a project,
+ *     for IDEs that send {@code Authorization: Bearer <events token>}</li>
+ * </ul>
+ * Configured with the environment variables {@code RELAY_PORT} (default 8787), {@code RELAY_WEBHOOK_SECRET},
+ * the secret token gitlab sends in {@code X-Gitlab-Token}, and the required {@code RELAY_EVENTS_TOKEN}.
+ * Without a webhook secret every webhook is accepted. One relay can serve several gitlab instances, their events
+ * are told apart by the {@code X-Gitlab-Instance} header or the project url of the hook.
+ */
+public class PipelineRelay {
+
+    private static final Logger LOG = Logger.getLogger(PipelineRelay.class.getName());
+    private static final int DEFAULT_PORT = 8787;
+    private static final long HEARTBEAT_SECONDS = 15;
+    private static final String BEARER = "Bearer ";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final EventBroker broker = new EventBroker();
+    private final String webhookSecret;
+    private final String eventsToken;
+    private HttpServer server;
+    private ExecutorService exchanges;
+    private ScheduledExecutorService heartbeat;
+
+    /**
+     * @param eventsToken the token subscribers of the event streams must send, they reveal the pipelines of every project
+     */
+    PipelineRelay(String webhookSecret, String eventsToken) {
+        if (eventsToken == null || eventsToken.isBlank()) {
+            throw new IllegalArgumentException("RELAY_EVENTS_TOKEN must be set");
+        }
+        this.webhookSecret = webhookSecret;
+        this.eventsToken = eventsToken;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Optional.ofNullable(System.getenv("RELAY_PORT")).map(Integer::parseInt).orElse(DEFAULT_PORT);
+        var relay = new PipelineRelay(System.getenv("RELAY_WEBHOOK_SECRET"), System.getenv("RELAY_EVENTS_TOKEN"));
+        relay.start(port);
+        LOG.info("Pipeline relay listening on port " + port);
+    }
+
+    /**
+     * @param port the port to listen on, {@code 0} for any free one
+     * @return the port the relay listens on
+     */
+    int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        exchanges = Executors.newCachedThreadPool();
+        server.setExecutor(exchanges);
+        server.createContext("/webhook", this::handleWebhook);
+        server.createContext("/events", this::handleEvents);
+        server.start();
+        heartbeat = Executors.newSingleThreadScheduledExecutor();
+        heartbeat.scheduleAtFixedRate(broker::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        heartbeat.shutdownNow();
+        server.stop(0);
+        exchanges.shutdownNow();
+    }
+
+    private void handleWebhook(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            var secretConfigured = webhookSecret != null && !webhookSecret.isEmpty();
+            if (secretConfigured && !tokenMatches(webhookSecret, exchange.getRequestHeaders().getFirst("X-Gitlab-Token"))) {
+                // an unread body would leave the connection unusable for the next hook
+                exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            JsonNode hook;
+            try {
+                hook = mapper.readTree(exchange.getRequestBody());
+            } catch (JsonProcessingException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            var event = WebhookEvent.of(hook, exchange.getRequestHeaders().getFirst("X-Gitlab-Instance"));
+            event.ifPresent(webhookEvent -> broker.publish(webhookEvent, toJson(webhookEvent)));
+            exchange.sendResponseHeaders(event.isPresent() ? 200 : 202, -1);
+        }
+    }
+
+    private void handleEvents(HttpExchange exchange) throws IOException {
+        var query = query(exchange);
+        var instance = WebhookEvent.instanceOf(query.get("instance"));
+        var project = query.get("project");
+        var ref = query.get("ref");
+        if (!"GET".equals(exchange.getRequestMethod()) || instance == null || project == null || ref == null || !project.matches("\\d+")) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+        var authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith(BEARER) || !tokenMatches(eventsToken, authorization.substring(BEARER.length()))) {
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+            return;
+        }
+        broker.subscribe(new WebhookEvent.Key(instance, Long.parseLong(project), ref), exchange);
+    }
+
+    private static boolean tokenMatches(String expected, String token) {
+        if (token == null) return false;
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String toJson(WebhookEvent event) {
+        try {
+            return mapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        var parameters = new HashMap<String, String>();
+        var query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return parameters;
+        for (var parameter : query.split("&")) {
+            var separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,73 @@
+package de.dontknow.gitlabpipelines.relay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * The part of a gitlab pipeline or job webhook the plugin needs to know that something changed.
+ *
+ * @param instance the origin of the gitlab instance that sent the hook, see {@link #instanceOf}
+ * @param kind     {@code pipeline} or {@code build}, the {@code object_kind} of the hook
+ * @param status   the new status of the pipeline or job
+ */
+record WebhookEvent(String instance, long projectId, String ref, String kind, String status) {
+
+    /**
+     * @param instanceHeader the {@code X-Gitlab-Instance} header, older gitlab versions do not send it and the
+     *                       instance is taken from the project url of the hook
+     * @return the event, empty for hooks other than pipeline and job hooks and for hooks of an unknown instance
+     */
+    static Optional<WebhookEvent> of(JsonNode hook, String instanceHeader) {
+        var kind = hook.path("object_kind").asText();
+        var instance = instanceHeader != null ? instanceOf(instanceHeader) : instanceOf(hook.path("project").path("web_url").asText(null));
+        if (instance == null) {
+            instance = instanceOf(hook.path("repository").path("homepage").asText(null));
+        }
+        if (instance == null) return Optional.empty();
+        return switch (kind) {
+            case "pipeline" -> Optional.of(new WebhookEvent(
+                    instance,
+                    hook.path("project").path("id").asLong(),
+                    hook.path("object_attributes").path("ref").asText(),
+                    kind,
+                    hook.path("object_attributes").path("status").asText()));
+            case "build" -> Optional.of(new WebhookEvent(
+                    instance,
+                    hook.path("project_id").asLong(),
+                    hook.path("ref").asText(),
+                    kind,
+                    hook.path("build_status").asText()));
+            default -> Optional.empty();
+        };
+    }
+
+    /**
+     * Instances are told apart by scheme, host and port, whatever path the url has.
+     *
+     * @return the origin of the url, {@code null} if it is not an absolute http url
+     */
+    static String instanceOf(String url) {
+        if (url == null || url.isBlank()) return null;
+        try {
+            var uri = URI.create(url.trim());
+            if (uri.getScheme() == null || uri.getHost() == null) return null;
+            var origin = uri.getScheme() + "://" + uri.getHost() + (uri.getPort() == -1 ? "" : ":" + uri.getPort());
+            return origin.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    Key key() {
+        return new Key(instance, projectId, ref);
+    }
+
+    /**
+     * Identifies the pipelines of one ref in one project of a gitlab instance, what clients subscribe to.
+     */
+    record Key(String instance, long projectId, String ref) {
+    }
+}
@@ -0,0 +1,114 @@
+package de.dontknow.gitlabpipelines.relay;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the relay on a free port and talks to it like gitlab and the IDEs do.
+ */
+class PipelineRelayTest {
+
+    private static final String WEBHOOK_SECRET = "webhook-secret";
+    private static final String EVENTS_TOKEN = "events-token";
+    private static final String INSTANCE = "https://gitlab.example.com";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private PipelineRelay relay;
+    private String relayUrl;
+
+    @BeforeEach
+    void startRelay() throws IOException {
+        relay = new PipelineRelay(WEBHOOK_SECRET, EVENTS_TOKEN);
+        relayUrl = "http://localhost:" + relay.start(0);
+    }
+
+    @AfterEach
+    void stopRelay() {
+        relay.stop();
+    }
+
+    @Test
+    void rejectsEventStreamsWithoutTheEventsToken() throws Exception {
+        var withoutToken = HttpRequest.newBuilder(eventsUri(INSTANCE)).GET().build();
+        var wrongToken = HttpRequest.newBuilder(eventsUri(INSTANCE)).header("Authorization", "Bearer wrong").GET().build();
+
+        assertEquals(401, client.send(withoutToken, HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertEquals(401, client.send(wrongToken, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void rejectsWebhooksWithAWrongSecret() throws Exception {
+        assertEquals(401, postWebhook("wrong", INSTANCE).statusCode());
+        assertEquals(401, postWebhook(null, INSTANCE).statusCode());
+        assertEquals(200, postWebhook(WEBHOOK_SECRET, INSTANCE).statusCode());
+    }
+
+    @Test
+    void pushesWebhooksToTheSubscribersOfTheirInstanceProjectAndRef() throws Exception {
+        var lines = subscribe(INSTANCE);
+        assertEquals(": subscribed", nextLine(lines));
+
+        assertEquals(200, postWebhook(WEBHOOK_SECRET, "https://other.example.com").statusCode());
+        assertEquals(200, postWebhook(WEBHOOK_SECRET, INSTANCE).statusCode());
+
+        assertEquals("event: build", nextLine(lines));
+        var data = nextLine(lines);
+        assertTrue(data.startsWith("data: ") && data.contains("\"instance\":\"" + INSTANCE + "\""), data);
+    }
+
+    private BlockingQueue<String> subscribe(String instance) throws Exception {
+        var request = HttpRequest.newBuilder(eventsUri(instance))
+                .header("Authorization", "Bearer " + EVENTS_TOKEN)
+                .GET()
+                .build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        var lines = new LinkedBlockingQueue<String>();
+        var reader = new Thread(() -> {
+            try {
+                response.body().filter(line -> !line.isEmpty()).forEach(lines::add);
+            } catch (UncheckedIOException e) {
+                // the relay was stopped
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        return lines;
+    }
+
+    private static String nextLine(BlockingQueue<String> lines) throws InterruptedException {
+        var line = lines.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (line == null) throw new AssertionError("no event within " + TIMEOUT_SECONDS + " seconds");
+        return line;
+    }
+
+    private HttpResponse<Void> postWebhook(String secret, String instance) throws Exception {
+        var builder = HttpRequest.newBuilder(URI.create(relayUrl + "/webhook"))
+                .header("X-Gitlab-Instance", instance)
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"object_kind\":\"build\",\"project_id\":42,\"ref\":\"main\",\"build_status\":\"running\"}"));
+        if (secret != null) {
+            builder.header("X-Gitlab-Token", secret);
+        }
+        return client.send(builder.build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private URI eventsUri(String instance) {
+        return URI.create(relayUrl + "/events?instance=" + instance + "&project=42&ref=main");
+    }
+}
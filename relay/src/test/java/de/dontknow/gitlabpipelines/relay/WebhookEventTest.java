@@ -0,0 +1,71 @@
+package de.dontknow.gitlabpipelines.relay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class WebhookEventTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void readsPipelineHooks() throws IOException {
+        var hook = hook("""
+                {"object_kind": "pipeline",
+                 "object_attributes": {"id": 31, "ref": "main", "status": "running"},
+                 "project": {"id": 42, "web_url": "https://gitlab.example.com/group/project"}}
+                """);
+
+        assertEquals(Optional.of(new WebhookEvent("https://gitlab.example.com", 42, "main", "pipeline", "running")),
+                WebhookEvent.of(hook, null));
+    }
+
+    @Test
+    void readsJobHooks() throws IOException {
+        var hook = hook("""
+                {"object_kind": "build", "project_id": 42, "ref": "feature/x", "build_status": "failed",
+                 "repository": {"homepage": "https://gitlab.example.com/group/project"}}
+                """);
+
+        assertEquals(Optional.of(new WebhookEvent("https://gitlab.example.com", 42, "feature/x", "build", "failed")),
+                WebhookEvent.of(hook, null));
+    }
+
+    @Test
+    void prefersTheInstanceHeader() throws IOException {
+        var hook = hook("""
+                {"object_kind": "build", "project_id": 42, "ref": "main", "build_status": "success",
+                 "repository": {"homepage": "https://mirror.example.com/group/project"}}
+                """);
+
+        assertEquals("https://gitlab.example.com:8443",
+                WebhookEvent.of(hook, "HTTPS://GitLab.example.com:8443/").map(WebhookEvent::instance).orElse(null));
+    }
+
+    @Test
+    void ignoresOtherHooksAndHooksOfUnknownInstances() throws IOException {
+        assertEquals(Optional.empty(), WebhookEvent.of(hook("""
+                {"object_kind": "push", "project": {"id": 42, "web_url": "https://gitlab.example.com/group/project"}}
+                """), null));
+        assertEquals(Optional.empty(), WebhookEvent.of(hook("""
+                {"object_kind": "build", "project_id": 42, "ref": "main", "build_status": "success"}
+                """), null));
+    }
+
+    @Test
+    void identifiesInstancesByTheirOrigin() {
+        assertEquals("https://gitlab.example.com", WebhookEvent.instanceOf(" https://GITLAB.example.com/gitlab/ "));
+        assertNull(WebhookEvent.instanceOf("gitlab.example.com"));
+        assertNull(WebhookEvent.instanceOf(""));
+    }
+
+    private static JsonNode hook(String json) throws IOException {
+        return MAPPER.readTree(json);
+    }
+}
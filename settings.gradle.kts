@@ -5,4 +5,5 @@ pluginManagement {
     }
 }
 
-rootProject.name = "gitlab-pipelines"
\ No newline at end of file
+rootProject.name = "gitlab-pipelines"
+include("relay")
@@ -0,0 +1,127 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Gitlab api payloads shaped like the responses of {@code /api/v4}, including the runner, artifacts,
+ * commit and user objects the plugin never reads.
+ */
+final class GitlabFixtures {
+
+    static final String GITLAB_URL = "https://gitlab.example.com";
+    static final int PROJECT_ID = 4711;
+    static final int PIPELINE_ID = 90210;
+
+    private static final List<String> STAGES = List.of("prepare", "build", "test", "lint", "package", "deploy", "verify", "cleanup");
+    private static final String[] STATUSES = {"success", "success", "success", "running", "pending", "failed", "manual", "created"};
+
+    private GitlabFixtures() {
+    }
+
+    static byte[] pipelines(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(index -> pipeline(PIPELINE_ID - index, index == 0 ? "running" : "success"))
+                .collect(Collectors.joining(",", "[", "]"))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Jobs of {@link #PIPELINE_ID}, newest first like gitlab lists them.
+     *
+     * @param jobCount total number of jobs of the pipeline
+     * @param from     index of the first job of the page
+     * @param to       index after the last job of the page
+     */
+    static byte[] jobs(int jobCount, int from, int to) {
+        return IntStream.range(from, Math.min(to, jobCount))
+                .mapToObj(index -> job(jobCount, index))
+                .collect(Collectors.joining(",", "[", "]"))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] jobs(int jobCount) {
+        return jobs(jobCount, 0, jobCount);
+    }
+
+    /**
+     * Canned answer of the graphql query for {@link #PROJECT_ID}, with at most {@code jobsPerStage} jobs per stage
+     * like gitlab pages them.
+     */
+    static byte[] graphqlPipeline(int jobCount, int jobsPerStage) {
+        var stages = IntStream.range(0, jobCount)
+                .boxed()
+                .collect(Collectors.groupingBy(index -> STAGES.get(STAGES.size() - 1 - index * STAGES.size() / jobCount),
+                        LinkedHashMap::new, Collectors.toList()));
+        var stageNodes = stages.entrySet().stream()
+                .map(stage -> {
+                    var jobs = stage.getValue().stream()
+                            .limit(jobsPerStage)
+                            .map(index -> "{\"id\":\"gid://gitlab/Ci::Build/%d\",\"name\":\"%s %d/%d\",\"status\":\"%s\"}"
+                                    .formatted(1_000_000 + jobCount - index, stage.getKey(), index % 5 + 1, 5, STATUSES[index % STATUSES.length].toUpperCase(Locale.ROOT)))
+                            .collect(Collectors.joining(","));
+                    return "{\"name\":\"%s\",\"jobs\":{\"pageInfo\":{\"hasNextPage\":%s},\"nodes\":[%s]}}"
+                            .formatted(stage.getKey(), stage.getValue().size() > jobsPerStage, jobs);
+                })
+                .collect(Collectors.joining(","));
+        return ("{\"data\":{\"k0\":{\"nodes\":[{\"webUrl\":\"https://gitlab.example.com/group/project\",\"pipelines\":{\"nodes\":[" +
+                "{\"id\":\"gid://gitlab/Ci::Pipeline/%d\",\"status\":\"RUNNING\",\"stages\":{\"nodes\":[%s]}}]}}]}}}")
+                .formatted(PIPELINE_ID, stageNodes)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String job(int jobCount, int index) {
+        int id = 1_000_000 + jobCount - index;
+        // newest first, so the last stage comes first
+        var stage = STAGES.get(STAGES.size() - 1 - index * STAGES.size() / jobCount);
+        var status = STATUSES[index % STATUSES.length];
+        return """
+                {"id":%d,"status":"%s","stage":"%s","name":"%s %d/%d","ref":"main","tag":false,"coverage":null,\
+                "allow_failure":false,"created_at":"2024-05-02T10:15:30.123Z","started_at":"2024-05-02T10:16:01.456Z",\
+                "finished_at":"2024-05-02T10:19:44.789Z","erased_at":null,"duration":223.333,"queued_duration":1.52,\
+                "user":%s,"commit":%s,"pipeline":%s,"failure_reason":null,\
+                "web_url":"https://gitlab.example.com/group/project/-/jobs/%d",\
+                "project":{"ci_job_token_scope_enabled":false},\
+                "artifacts":[{"file_type":"trace","size":48213,"filename":"job.log","file_format":null},\
+                {"file_type":"junit","size":1832,"filename":"junit.xml.gz","file_format":"gzip"}],\
+                "runner":{"id":42,"description":"shared-runner-7","ip_address":null,"active":true,"paused":false,\
+                "is_shared":true,"runner_type":"instance_type","name":"gitlab-runner","online":true,"status":"online"},\
+                "runner_manager":{"id":7,"system_id":"s_0e6850b2bce1","version":"16.11.0","revision":"91a27b2a",\
+                "platform":"linux","architecture":"amd64","created_at":"2024-01-01T00:00:00.000Z",\
+                "contacted_at":"2024-05-02T10:19:40.000Z","ip_address":"10.0.0.7","status":"online"},\
+                "artifacts_expire_at":"2024-06-01T10:19:44.000Z","archived":false,"tag_list":["docker","linux"]}"""
+                .formatted(id, status, stage, stage, index % 5 + 1, 5, user(), commit(), pipeline(PIPELINE_ID, "running"), id);
+    }
+
+    private static String pipeline(int id, String status) {
+        return """
+                {"id":%d,"iid":%d,"project_id":%d,"sha":"2a7f5c3d9e1b4f6a8c0d2e4f6a8b0c2d4e6f8a0b","ref":"main",\
+                "status":"%s","source":"push","created_at":"2024-05-02T10:15:30.000Z",\
+                "updated_at":"2024-05-02T10:19:44.000Z","web_url":"https://gitlab.example.com/group/project/-/pipelines/%d"}"""
+                .formatted(id, id - 90000, PROJECT_ID, status, id);
+    }
+
+    private static String user() {
+        return """
+                {"id":12,"username":"jdoe","name":"Jane Doe","state":"active","locked":false,\
+                "avatar_url":"https://gitlab.example.com/uploads/-/system/user/avatar/12/avatar.png",\
+                "web_url":"https://gitlab.example.com/jdoe","created_at":"2020-01-01T00:00:00.000Z","bio":"",\
+                "location":"","public_email":null,"skype":"","linkedin":"","twitter":"","discord":"",\
+                "website_url":"","organization":"","job_title":"","pronouns":null,"bot":false,\
+                "work_information":null,"followers":0,"following":0,"local_time":null}""";
+    }
+
+    private static String commit() {
+        return """
+                {"id":"2a7f5c3d9e1b4f6a8c0d2e4f6a8b0c2d4e6f8a0b","short_id":"2a7f5c3d","created_at":"2024-05-02T10:15:00.000+00:00",\
+                "parent_ids":["1b6e4c2a8d0f3e5b7a9c1d3f5e7a9b1c3d5f7e9a"],"title":"Speed up the status bar widget",\
+                "message":"Speed up the status bar widget\\n\\nRender only what changed.\\n","author_name":"Jane Doe",\
+                "author_email":"jdoe@example.com","authored_date":"2024-05-02T10:14:00.000+00:00","committer_name":"Jane Doe",\
+                "committer_email":"jdoe@example.com","committed_date":"2024-05-02T10:15:00.000+00:00","trailers":{},\
+                "extended_trailers":{},"web_url":"https://gitlab.example.com/group/project/-/commit/2a7f5c3d"}""";
+    }
+}
@@ -0,0 +1,67 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding cost of the job listing and the pipeline listing of one poll, streaming reader against data binding.
+ * Run with {@code -prof gc} to compare the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonParsingBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Param({"10", "200", "2000"})
+    public int jobCount;
+
+    private byte[] jobs;
+    private byte[] pipelines;
+
+    @Setup
+    public void setUp() {
+        jobs = GitlabFixtures.jobs(jobCount);
+        // gitlab's default page size, what the listing returned without per_page=1
+        pipelines = GitlabFixtures.pipelines(20);
+    }
+
+    @Benchmark
+    public List<PipelineJob> jobsStreaming() throws IOException {
+        return GitlabJsonReader.readJobs(new ByteArrayInputStream(jobs));
+    }
+
+    @Benchmark
+    public List<PipelineJob> jobsDataBinding() throws IOException {
+        return mapper.readValue(new ByteArrayInputStream(jobs), new TypeReference<>() {
+        });
+    }
+
+    @Benchmark
+    public PipelineDto latestPipelineStreaming() throws IOException {
+        return GitlabJsonReader.readFirstPipeline(new ByteArrayInputStream(pipelines));
+    }
+
+    @Benchmark
+    public PipelineDto latestPipelineDataBinding() throws IOException {
+        List<PipelineDto> pipelineDtos = mapper.readValue(new ByteArrayInputStream(pipelines), new TypeReference<>() {
+        });
+        return pipelineDtos.get(0);
+    }
+}
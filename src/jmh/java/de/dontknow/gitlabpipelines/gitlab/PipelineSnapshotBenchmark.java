@@ -0,0 +1,53 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning polled jobs into what the status bar shows: stage grouping, status aggregation
+ * and the diff against the displayed snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PipelineSnapshotBenchmark {
+
+    @Param({"10", "200", "2000"})
+    public int jobCount;
+
+    private PipelineState state;
+    private PipelineSnapshot displayed;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<PipelineJob> jobs = GitlabJsonReader.readJobs(new ByteArrayInputStream(GitlabFixtures.jobs(jobCount)));
+        state = new PipelineState(jobs.get(0).pipeline(), jobs, Map.of(), false);
+        displayed = PipelineSnapshot.of(GitlabFixtures.GITLAB_URL, state);
+    }
+
+    @Benchmark
+    public PipelineSnapshot groupStages() {
+        return PipelineSnapshot.of(GitlabFixtures.GITLAB_URL, state);
+    }
+
+    /**
+     * A tick without changes, the common case while a pipeline is running.
+     */
+    @Benchmark
+    public PipelineSnapshotDiff groupAndDiffUnchanged() {
+        return PipelineSnapshotDiff.between(displayed, PipelineSnapshot.of(GitlabFixtures.GITLAB_URL, state));
+    }
+}
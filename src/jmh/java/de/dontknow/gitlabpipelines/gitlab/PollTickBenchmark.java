@@ -0,0 +1,125 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.dontknow.gitlabpipelines.config.PipelineCacheStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end latency of one poll of a running pipeline against a local stub of the gitlab api:
+ * latest pipeline, all job pages, parsing and publishing the new state. The graphql transport gets a canned
+ * answer and falls back to the rest job listing for stages with more than 100 jobs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PollTickBenchmark {
+
+    private static final int JOBS_PER_PAGE = 100;
+    private static final int RATE_LIMIT = 1_000_000;
+    private static final byte[] NO_BRIDGES = "[]".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"10", "200", "2000"})
+    public int jobCount;
+
+    @Param({"rest", "graphql"})
+    public String transportType;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private PipelineTransport transport;
+    private PipelineWatch watch;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        var jobPages = new HashMap<String, byte[]>();
+        int pageCount = Math.max(1, (jobCount + JOBS_PER_PAGE - 1) / JOBS_PER_PAGE);
+        for (int page = 1; page <= pageCount; page++) {
+            jobPages.put(String.valueOf(page), GitlabFixtures.jobs(jobCount, (page - 1) * JOBS_PER_PAGE, page * JOBS_PER_PAGE));
+        }
+        var pipelines = GitlabFixtures.pipelines(1);
+        var graphqlPipeline = GitlabFixtures.graphqlPipeline(jobCount, 100);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.createContext("/api/v4/projects/" + GitlabFixtures.PROJECT_ID + "/pipelines", exchange -> {
+            if (exchange.getRequestURI().getPath().endsWith("/jobs")) {
+                var page = query(exchange).getOrDefault("page", "1");
+                int nextPage = Integer.parseInt(page) + 1;
+                exchange.getResponseHeaders().add("X-Next-Page", nextPage <= pageCount ? String.valueOf(nextPage) : "");
+                respond(exchange, jobPages.get(page));
+            } else if (exchange.getRequestURI().getPath().endsWith("/bridges")) {
+                respond(exchange, NO_BRIDGES);
+            } else {
+                respond(exchange, pipelines);
+            }
+        });
+        server.createContext("/api/graphql", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, graphqlPipeline);
+        });
+        server.start();
+
+        var gitlabUrl = "http://localhost:" + server.getAddress().getPort();
+        var connection = new GitlabProjectConnection(gitlabUrl, "benchmark-token");
+        transport = "graphql".equals(transportType) ? new GraphqlPipelineTransport(connection) : connection;
+        watch = new PipelineWatch(new PipelineKey(gitlabUrl, GitlabFixtures.PROJECT_ID, "main"), new PipelineCacheStorage());
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public void tick() {
+        watch.wakeUp();
+        watch.poll(transport).block();
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        var parameters = new HashMap<String, String>();
+        var query = exchange.getRequestURI().getQuery();
+        if (query == null) return parameters;
+        for (var parameter : query.split("&")) {
+            var separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+            }
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        // an ample budget, so the governor parses the headers on every response without slowing the poll down
+        exchange.getResponseHeaders().add("RateLimit-Remaining", String.valueOf(RATE_LIMIT));
+        exchange.getResponseHeaders().add("RateLimit-Reset", String.valueOf(Instant.now().getEpochSecond() + 60));
+        exchange.sendResponseHeaders(200, body.length);
+        try (var responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+}
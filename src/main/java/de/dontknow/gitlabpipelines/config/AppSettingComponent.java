@@ -1,54 +1,167 @@
 package de.dontknow.gitlabpipelines.config;
 
-import com.intellij.openapi.util.IconLoader;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.ui.CollectionListModel;
+import com.intellij.ui.SimpleListCellRenderer;
+import com.intellij.ui.ToolbarDecorator;
+import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBList;
 import com.intellij.ui.components.JBPasswordField;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.util.ui.FormBuilder;
-import de.dontknow.gitlabpipelines.gitlab.GitlabProjectConnection;
+import de.dontknow.gitlabpipelines.config.GitlabConnectionStorage.GitlabInstanceState;
+import de.dontknow.gitlabpipelines.gitlab.PipelinePollingService;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
 import org.jetbrains.annotations.NotNull;
+import reactor.core.publisher.Mono;
 
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
-import java.util.concurrent.CompletableFuture;
+import java.time.Duration;
+import java.util.List;
 
 /**
  * Supports creating and managing a {@link JPanel} for the Settings Dialog.
  */
 public class AppSettingComponent {
 
+    /**
+     * Typing pause after which the entered credentials are probed.
+     */
+    private static final Duration VALIDATION_DEBOUNCE = Duration.ofMillis(400);
+
     private final JPanel rootPanel;
+    private final CollectionListModel<GitlabInstanceState> instancesModel = new CollectionListModel<>();
+    private final JBList<GitlabInstanceState> instancesList = new JBList<>(instancesModel);
     private final JBTextField gitlabUrlText = new JBTextField();
     private final JBPasswordField gitlabPrivateTokenText = new JBPasswordField();
+    private final JBTextField relayUrlText = new JBTextField();
+    private final JBPasswordField relayTokenText = new JBPasswordField();
+    private final JBCheckBox useGraphqlCheckBox = new JBCheckBox("Fetch pipelines with one GraphQL query per poll");
     private final JBLabel connectionStatusLabel = new JBLabel();
+    private reactor.core.Disposable pendingValidation;
+    private int validationSequence;
+    /**
+     * Set while the fields are filled with the selected instance, so that is not written back as an edit.
+     */
+    private boolean showingInstance;
 
     public AppSettingComponent() {
+        instancesList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        instancesList.setCellRenderer(SimpleListCellRenderer.create("", instance -> instance.gitlabUrl));
+        instancesList.addListSelectionListener(e -> showSelectedInstance());
+        var instancesPanel = ToolbarDecorator.createDecorator(instancesList)
+                .setAddAction(button -> addInstance())
+                .setRemoveAction(button -> removeSelectedInstance())
+                .disableUpDownActions()
+                .createPanel();
         rootPanel = FormBuilder.createFormBuilder()
+                .addLabeledComponent(new JBLabel("Gitlab instances:"), instancesPanel, 1, true)
                 .addLabeledComponent(new JBLabel("Gitlab url:"), gitlabUrlText, 1, false)
                 .addLabeledComponent(new JBLabel("Gitlab private-token:"), gitlabPrivateTokenText, 1, false)
                 .addLabeledComponent(new JBLabel("Connection status:"), connectionStatusLabel, 1, false)
+                .addLabeledComponent(new JBLabel("Pipeline relay url of the instance (optional):"), relayUrlText, 1, false)
+                .addLabeledComponent(new JBLabel("Pipeline relay token:"), relayTokenText, 1, false)
+                .addComponent(useGraphqlCheckBox, 1)
                 .addComponentFillVertically(new JPanel(), 0)
                 .getPanel();
-        var gitlabProjectConnection = new GitlabProjectConnection();
-        updateStatusSymbol(gitlabProjectConnection);
-        gitlabUrlText.getDocument().addDocumentListener(addListener(() -> updateStatusSymbol(gitlabProjectConnection)));
-        gitlabPrivateTokenText.getDocument().addDocumentListener(addListener(() -> updateStatusSymbol(gitlabProjectConnection)));
-    }
-
-    private void updateStatusSymbol(GitlabProjectConnection gitlabProjectConnection) {
-        connectionStatusLabel.setIcon(IconLoader.getIcon("/Icons/status-running.svg", getClass()));
-        CompletableFuture.runAsync(() -> {
-            if (gitlabProjectConnection.isValid(gitlabUrlText.getText(), new String(gitlabPrivateTokenText.getPassword()))) {
-                connectionStatusLabel.setIcon(IconLoader.getIcon("/Icons/status_success_solid.svg", getClass()));
-            } else {
-                connectionStatusLabel.setIcon(IconLoader.getIcon("/Icons/status-failed.svg", getClass()));
-            }
-        }).whenComplete((unused, throwable) -> {
-            if (throwable != null) {
-                throw new RuntimeException(throwable);
-            }
-        });
+        gitlabUrlText.getDocument().addDocumentListener(addListener(this::onInstanceEdited));
+        gitlabPrivateTokenText.getDocument().addDocumentListener(addListener(this::onInstanceEdited));
+        relayUrlText.getDocument().addDocumentListener(addListener(this::onRelayEdited));
+        relayTokenText.getDocument().addDocumentListener(addListener(this::onRelayEdited));
+        showSelectedInstance();
+    }
+
+    private void addInstance() {
+        var instance = new GitlabInstanceState();
+        instancesModel.add(instance);
+        instancesList.setSelectedIndex(instancesModel.getElementIndex(instance));
+        gitlabUrlText.requestFocusInWindow();
+    }
+
+    private void removeSelectedInstance() {
+        var selected = instancesList.getSelectedValue();
+        if (selected == null) return;
+        instancesModel.remove(selected);
+        if (instancesModel.getSize() > 0) {
+            instancesList.setSelectedIndex(0);
+        }
+    }
+
+    private void showSelectedInstance() {
+        var selected = instancesList.getSelectedValue();
+        showingInstance = true;
+        try {
+            gitlabUrlText.setText(selected == null ? "" : selected.gitlabUrl);
+            gitlabPrivateTokenText.setText(selected == null ? "" : selected.privateToken);
+            relayUrlText.setText(selected == null ? "" : selected.relayUrl);
+            relayTokenText.setText(selected == null ? "" : selected.relayToken);
+        } finally {
+            showingInstance = false;
+        }
+        gitlabUrlText.setEnabled(selected != null);
+        gitlabPrivateTokenText.setEnabled(selected != null);
+        relayUrlText.setEnabled(selected != null);
+        relayTokenText.setEnabled(selected != null);
+        updateStatusSymbol();
+    }
+
+    private void onInstanceEdited() {
+        if (showingInstance) return;
+        var selected = instancesList.getSelectedValue();
+        if (selected == null) return;
+        selected.gitlabUrl = gitlabUrlText.getText();
+        selected.privateToken = new String(gitlabPrivateTokenText.getPassword());
+        instancesModel.contentsChanged(selected);
+        updateStatusSymbol();
+    }
+
+    private void onRelayEdited() {
+        if (showingInstance) return;
+        var selected = instancesList.getSelectedValue();
+        if (selected == null) return;
+        selected.relayUrl = relayUrlText.getText();
+        selected.relayToken = new String(relayTokenText.getPassword());
+    }
+
+    /**
+     * Probes the credentials of the selected instance once typing paused. A validation still running for previous
+     * input is cancelled.
+     */
+    private void updateStatusSymbol() {
+        cancelValidation();
+        int sequence = ++validationSequence;
+        if (instancesList.getSelectedValue() == null) {
+            connectionStatusLabel.setIcon(null);
+            return;
+        }
+        connectionStatusLabel.setIcon(GitlabStatus.running.getIcon());
+        var gitlabUrl = gitlabUrlText.getText();
+        var privateToken = new String(gitlabPrivateTokenText.getPassword());
+        pendingValidation = Mono.delay(VALIDATION_DEBOUNCE)
+                .then(PipelinePollingService.getInstance().isValid(gitlabUrl, privateToken))
+                .subscribe(valid -> ApplicationManager.getApplication().invokeLater(() -> {
+                    if (sequence != validationSequence) return;
+                    if (valid) {
+                        connectionStatusLabel.setIcon(GitlabStatus.success.getIcon());
+                    } else {
+                        connectionStatusLabel.setIcon(GitlabStatus.failed.getIcon());
+                    }
+                }, ModalityState.any()));
+    }
+
+    private void cancelValidation() {
+        if (pendingValidation != null) {
+            pendingValidation.dispose();
+            pendingValidation = null;
+        }
+    }
+
+    public void dispose() {
+        cancelValidation();
     }
 
     public JPanel getPanel() {
@@ -56,24 +169,31 @@ public class AppSettingComponent {
     }
 
     public JComponent getPreferredFocusedComponent() {
-        return gitlabUrlText;
+        return instancesList;
     }
 
+    /**
+     * @return copies of the edited instances
+     */
     @NotNull
-    public String getGitlabUrl() {
-        return gitlabUrlText.getText();
+    public List<GitlabInstanceState> getInstances() {
+        return instancesModel.getItems().stream().map(GitlabInstanceState::copy).toList();
     }
 
-    public void setGitlabUrl(@NotNull String gitlabUrl) {
-        gitlabUrlText.setText(gitlabUrl);
+    public void setInstances(List<GitlabInstanceState> instances) {
+        instancesModel.replaceAll(instances.stream().map(GitlabInstanceState::copy).toList());
+        if (instancesModel.getSize() > 0) {
+            instancesList.setSelectedIndex(0);
+        }
+        showSelectedInstance();
     }
 
-    public String getGitlabPrivateToken() {
-        return new String(gitlabPrivateTokenText.getPassword());
+    public boolean isUseGraphql() {
+        return useGraphqlCheckBox.isSelected();
     }
 
-    public void setGitlabPrivateToken(String newToken) {
-        gitlabPrivateTokenText.setText(newToken);
+    public void setUseGraphql(boolean useGraphql) {
+        useGraphqlCheckBox.setSelected(useGraphql);
     }
 
 
@@ -1,10 +1,17 @@
 package de.dontknow.gitlabpipelines.config;
 
 import com.intellij.openapi.options.Configurable;
+import de.dontknow.gitlabpipelines.gitlab.GitlabCredentialCache;
+import de.dontknow.gitlabpipelines.gitlab.PipelinePollingService;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -39,28 +46,44 @@ final class AppSettingsConfigurable implements Configurable {
     public boolean isModified() {
         GitlabConnectionStorage.GitlabConfigState gitlabConfigState =
                 Objects.requireNonNull(GitlabConnectionStorage.getInstance().getState());
-        return !mySettingsComponent.getGitlabUrl().equals(gitlabConfigState.gitlabUrl) ||
-                mySettingsComponent.getGitlabPrivateToken() != gitlabConfigState.privateToken;
+        return !mySettingsComponent.getInstances().equals(gitlabConfigState.instances) ||
+                mySettingsComponent.isUseGraphql() != gitlabConfigState.useGraphql;
     }
 
     @Override
     public void apply() {
         GitlabConnectionStorage.GitlabConfigState gitlabConfigState =
                 Objects.requireNonNull(GitlabConnectionStorage.getInstance().getState());
-        gitlabConfigState.gitlabUrl = mySettingsComponent.getGitlabUrl();
-        gitlabConfigState.privateToken = mySettingsComponent.getGitlabPrivateToken();
+        var previousRelays = relaysOf(gitlabConfigState.instances);
+        gitlabConfigState.instances = new ArrayList<>(mySettingsComponent.getInstances());
+        gitlabConfigState.useGraphql = mySettingsComponent.isUseGraphql();
+        GitlabCredentialCache.getInstance().invalidateAll();
+        PipelinePollingService.getInstance().updateInstances();
+        if (!previousRelays.equals(relaysOf(gitlabConfigState.instances))) {
+            PipelinePollingService.getInstance().updateRelay();
+        }
     }
 
     @Override
     public void reset() {
         GitlabConnectionStorage.GitlabConfigState gitlabConfigState =
                 Objects.requireNonNull(GitlabConnectionStorage.getInstance().getState());
-        mySettingsComponent.setGitlabUrl(gitlabConfigState.gitlabUrl);
-        mySettingsComponent.setGitlabPrivateToken(gitlabConfigState.privateToken);
+        mySettingsComponent.setInstances(gitlabConfigState.instances);
+        mySettingsComponent.setUseGraphql(gitlabConfigState.useGraphql);
+    }
+
+    private static Map<String, List<String>> relaysOf(List<GitlabConnectionStorage.GitlabInstanceState> instances) {
+        var relays = new HashMap<String, List<String>>();
+        instances.forEach(instance -> relays.putIfAbsent(GitlabConnectionStorage.normalizeUrl(instance.gitlabUrl),
+                Arrays.asList(instance.relayUrl, instance.relayToken)));
+        return relays;
     }
 
     @Override
     public void disposeUIResources() {
+        if (mySettingsComponent != null) {
+            mySettingsComponent.dispose();
+        }
         mySettingsComponent = null;
     }
 
@@ -4,9 +4,16 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
+import de.dontknow.gitlabpipelines.gitlab.GitlabCredentialCache;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
 @State(
         name = "de.dontknow.gitlab.settings",
         storages = @Storage("GitlabConnectionSetting.xml")
@@ -14,9 +21,81 @@ import org.jetbrains.annotations.NotNull;
 public class GitlabConnectionStorage implements PersistentStateComponent<GitlabConnectionStorage.GitlabConfigState> {
 
     public static class GitlabConfigState {
+        /**
+         * The gitlab instances with their tokens, a repository uses the one its remote is hosted on.
+         */
+        public List<GitlabInstanceState> instances = new ArrayList<>();
+        /**
+         * Single instance of older versions, moved into {@link #instances} when the settings are loaded.
+         */
         @NonNls
-        public String gitlabUrl = "https://Gitlab.com";
+        @Deprecated
+        public String gitlabUrl = "";
+        @Deprecated
         public String privateToken = "";
+        /**
+         * Whether pipelines are fetched with one graphql query per poll instead of the rest api.
+         */
+        public boolean useGraphql = false;
+    }
+
+    public static class GitlabInstanceState {
+        @NonNls
+        public String gitlabUrl = "https://gitlab.com";
+        public String privateToken = "";
+        /**
+         * Optional url of a pipeline relay that pushes the webhook events of this instance, empty to only poll.
+         */
+        public String relayUrl = "";
+        /**
+         * The events token the pipeline relay requires from its subscribers.
+         */
+        public String relayToken = "";
+
+        public GitlabInstanceState() {
+        }
+
+        public GitlabInstanceState(String gitlabUrl, String privateToken) {
+            this.gitlabUrl = gitlabUrl;
+            this.privateToken = privateToken;
+        }
+
+        public GitlabInstanceState copy() {
+            var copy = new GitlabInstanceState(gitlabUrl, privateToken);
+            copy.relayUrl = relayUrl;
+            copy.relayToken = relayToken;
+            return copy;
+        }
+
+        public boolean hasRelay() {
+            return relayUrl != null && !relayUrl.isBlank();
+        }
+
+        /**
+         * @return the host of the url, {@code null} if the url is not valid
+         */
+        public String host() {
+            if (gitlabUrl == null) return null;
+            try {
+                return URI.create(gitlabUrl.trim()).getHost();
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof GitlabInstanceState other
+                    && Objects.equals(gitlabUrl, other.gitlabUrl)
+                    && Objects.equals(privateToken, other.privateToken)
+                    && Objects.equals(relayUrl, other.relayUrl)
+                    && Objects.equals(relayToken, other.relayToken);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(gitlabUrl, privateToken, relayUrl, relayToken);
+        }
     }
 
     private GitlabConfigState myGitlabConfigState = new GitlabConfigState();
@@ -32,8 +111,49 @@ public class GitlabConnectionStorage implements PersistentStateComponent<GitlabC
     }
 
     @Override
+    @SuppressWarnings("deprecation")
     public void loadState(@NotNull GitlabConnectionStorage.GitlabConfigState gitlabConfigState) {
+        if (gitlabConfigState.instances.isEmpty() && gitlabConfigState.privateToken != null && !gitlabConfigState.privateToken.isEmpty()) {
+            // the default url of older versions was not written to the settings file
+            var legacyUrl = gitlabConfigState.gitlabUrl == null || gitlabConfigState.gitlabUrl.isBlank() ? "https://gitlab.com" : gitlabConfigState.gitlabUrl;
+            gitlabConfigState.instances.add(new GitlabInstanceState(legacyUrl, gitlabConfigState.privateToken));
+        }
+        gitlabConfigState.gitlabUrl = "";
+        gitlabConfigState.privateToken = "";
         myGitlabConfigState = gitlabConfigState;
+        GitlabCredentialCache.getInstance().invalidateAll();
     }
 
+    /**
+     * @return the configured instance hosted on the given host, the first one if several are
+     */
+    public Optional<GitlabInstanceState> findInstance(String host) {
+        if (host == null) return Optional.empty();
+        return myGitlabConfigState.instances.stream()
+                .filter(instance -> host.equalsIgnoreCase(instance.host()))
+                .findFirst();
+    }
+
+    /**
+     * @return the token configured for the given gitlab url, {@code null} if the instance is not configured
+     */
+    public String getPrivateToken(String gitlabUrl) {
+        return getInstance(gitlabUrl).map(instance -> instance.privateToken).orElse(null);
+    }
+
+    /**
+     * @param gitlabUrl the {@link #normalizeUrl normalized} url of the instance
+     */
+    public Optional<GitlabInstanceState> getInstance(String gitlabUrl) {
+        return myGitlabConfigState.instances.stream()
+                .filter(instance -> normalizeUrl(instance.gitlabUrl).equals(gitlabUrl))
+                .findFirst();
+    }
+
+    /**
+     * The form instances are identified by: trimmed and without trailing slashes.
+     */
+    public static String normalizeUrl(String gitlabUrl) {
+        return gitlabUrl == null ? "" : gitlabUrl.trim().replaceFirst("/+$", "");
+    }
 }
@@ -0,0 +1,125 @@
+package de.dontknow.gitlabpipelines.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.components.StoragePathMacros;
+import com.intellij.openapi.diagnostic.Logger;
+import de.dontknow.gitlabpipelines.gitlab.PipelineKey;
+import de.dontknow.gitlabpipelines.gitlab.PipelineState;
+import de.dontknow.gitlabpipelines.gitlab.dto.ProjectDto;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the gitlab project of every remote url and the last pipeline of every {@link PipelineKey}
+ * across IDE restarts, so the widget can show them before the first request returns.
+ * It is kept in the cache file of the IDE, it is not a setting and never roams.
+ */
+@State(
+        name = "de.dontknow.gitlab.cache",
+        storages = @Storage(StoragePathMacros.CACHE_FILE)
+)
+public class PipelineCacheStorage implements PersistentStateComponent<PipelineCacheStorage.PipelineCacheState> {
+
+    private static final Logger LOG = Logger.getInstance(PipelineCacheStorage.class);
+    private static final int MAX_PIPELINES = 64;
+
+    public static class PipelineCacheState {
+        public Map<String, CachedProject> projects = new ConcurrentHashMap<>();
+        public Map<String, CachedPipeline> pipelines = new ConcurrentHashMap<>();
+    }
+
+    public static class CachedProject {
+        public long id;
+        public String name;
+    }
+
+    public static class CachedPipeline {
+        /**
+         * The {@link PipelineState} as json.
+         */
+        public String state;
+        public long fetchedAt;
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private PipelineCacheState myPipelineCacheState = new PipelineCacheState();
+
+    public static PipelineCacheStorage getInstance() {
+        return ApplicationManager.getApplication()
+                .getService(PipelineCacheStorage.class);
+    }
+
+    @Override
+    public PipelineCacheState getState() {
+        return myPipelineCacheState;
+    }
+
+    @Override
+    public void loadState(@NotNull PipelineCacheStorage.PipelineCacheState pipelineCacheState) {
+        var state = new PipelineCacheState();
+        state.projects.putAll(pipelineCacheState.projects);
+        state.pipelines.putAll(pipelineCacheState.pipelines);
+        myPipelineCacheState = state;
+    }
+
+    public Optional<ProjectDto> getProject(String remoteUrl) {
+        return Optional.ofNullable(myPipelineCacheState.projects.get(remoteUrl))
+                .map(cachedProject -> new ProjectDto(cachedProject.name, cachedProject.id));
+    }
+
+    public void putProject(String remoteUrl, ProjectDto projectDto) {
+        var cachedProject = new CachedProject();
+        cachedProject.id = projectDto.id();
+        cachedProject.name = projectDto.name();
+        myPipelineCacheState.projects.put(remoteUrl, cachedProject);
+    }
+
+    /**
+     * @return the last stored state of the key, marked as stale
+     */
+    public Optional<PipelineState> getPipeline(PipelineKey key) {
+        var cachedPipeline = myPipelineCacheState.pipelines.get(toString(key));
+        if (cachedPipeline == null || cachedPipeline.state == null) return Optional.empty();
+        try {
+            var state = mapper.readValue(cachedPipeline.state, PipelineState.class);
+            return Optional.of(new PipelineState(state.pipeline(), state.jobs(), state.downstream(), true));
+        } catch (JsonProcessingException e) {
+            LOG.info("Dropping unreadable cached pipeline of " + key, e);
+            myPipelineCacheState.pipelines.remove(toString(key));
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the state of the key. Only the {@value #MAX_PIPELINES} most recently stored pipelines are kept.
+     */
+    public void putPipeline(PipelineKey key, PipelineState state) {
+        try {
+            var cachedPipeline = new CachedPipeline();
+            cachedPipeline.state = mapper.writeValueAsString(state);
+            cachedPipeline.fetchedAt = System.currentTimeMillis();
+            var pipelines = myPipelineCacheState.pipelines;
+            pipelines.put(toString(key), cachedPipeline);
+            if (pipelines.size() > MAX_PIPELINES) {
+                pipelines.entrySet().stream()
+                        .min(Comparator.comparingLong(entry -> entry.getValue().fetchedAt))
+                        .ifPresent(oldest -> pipelines.remove(oldest.getKey()));
+            }
+        } catch (JsonProcessingException e) {
+            LOG.warn("Could not cache pipeline of " + key, e);
+        }
+    }
+
+    private static String toString(PipelineKey key) {
+        return key.gitlabUrl() + " " + key.projectId() + ":" + key.ref();
+    }
+}
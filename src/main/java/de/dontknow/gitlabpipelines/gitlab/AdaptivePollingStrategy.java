@@ -0,0 +1,52 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polls every second while a pipeline is in progress and backs off exponentially once
+ * nothing is expected to change anymore. Background pipelines are polled ten times less often,
+ * polling is paused while the frame is inactive.
+ */
+public class AdaptivePollingStrategy implements PollingStrategy {
+
+    private static final Duration ACTIVE_DELAY = Duration.ofSeconds(1);
+    private static final Duration IDLE_DELAY = Duration.ofSeconds(2);
+    private static final Duration MAX_IDLE_DELAY = Duration.ofMinutes(5);
+    private static final Duration MAX_BACKGROUND_DELAY = Duration.ofMinutes(15);
+    private static final int BACKGROUND_FACTOR = 10;
+    private static final int MAX_BACKOFF_STEPS = 16;
+
+    private final AtomicInteger idlePolls = new AtomicInteger();
+
+    @Override
+    public Optional<Duration> nextDelay(GitlabStatus pipelineStatus, PollingPriority priority) {
+        if (priority == PollingPriority.PAUSED) return Optional.empty();
+        var delay = foregroundDelay(pipelineStatus);
+        if (priority == PollingPriority.BACKGROUND) {
+            return Optional.of(min(delay.multipliedBy(BACKGROUND_FACTOR), MAX_BACKGROUND_DELAY));
+        }
+        return Optional.of(delay);
+    }
+
+    private Duration foregroundDelay(GitlabStatus pipelineStatus) {
+        if (pipelineStatus != null && pipelineStatus.isInProgress()) {
+            idlePolls.set(0);
+            return ACTIVE_DELAY;
+        }
+        int backoffSteps = Math.min(idlePolls.getAndIncrement(), MAX_BACKOFF_STEPS);
+        return min(IDLE_DELAY.multipliedBy(1L << backoffSteps), MAX_IDLE_DELAY);
+    }
+
+    private static Duration min(Duration first, Duration second) {
+        return first.compareTo(second) <= 0 ? first : second;
+    }
+
+    @Override
+    public void reset() {
+        idlePolls.set(0);
+    }
+}
@@ -0,0 +1,144 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.BridgeJob;
+import de.dontknow.gitlabpipelines.gitlab.dto.DownstreamPipeline;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Follows the bridge jobs of a pipeline to the child and multi-project pipelines they triggered.
+ * <p>
+ * The tree is resolved level by level, all downstream pipelines of a level share one bound of {@link #MAX_PARALLEL}
+ * pipelines fetched at a time. A downstream pipeline that finished together with all of its own downstream
+ * pipelines is taken from the previous tree without a request.
+ */
+class DownstreamResolver {
+
+    /**
+     * Gitlab itself allows two levels of child pipelines, deeper trees are cut off here.
+     */
+    static final int MAX_DEPTH = 3;
+    private static final int MAX_PARALLEL = 4;
+
+    private DownstreamResolver() {
+    }
+
+    /**
+     * @param previous the downstream pipelines of the last poll of the same pipeline, by bridge job id
+     */
+    static Mono<Downstream> resolve(PipelineTransport transport, PipelineDto pipeline, Map<Integer, DownstreamPipeline> previous) {
+        return transport.getBridges(pipeline)
+                .flatMap(bridges -> {
+                    var roots = nodes(pipeline, bridges, previous, 1);
+                    return resolveLevel(transport, roots).then(Mono.fromSupplier(() -> assemble(roots)));
+                });
+    }
+
+    private static List<Node> nodes(PipelineDto pipeline, List<BridgeJob> bridges, Map<Integer, DownstreamPipeline> previous, int depth) {
+        return bridges.stream().map(bridge -> new Node(pipeline, bridge, previous.get(bridge.id()), depth)).toList();
+    }
+
+    /**
+     * Fetches the jobs and bridges of every downstream pipeline of the level, then continues with the level below.
+     */
+    private static Mono<Void> resolveLevel(PipelineTransport transport, List<Node> level) {
+        if (level.isEmpty()) return Mono.empty();
+        return Flux.fromIterable(level)
+                .filter(Node::needsFetch)
+                .flatMap(node -> fetch(transport, node), MAX_PARALLEL)
+                .collectList()
+                .flatMap(fetched -> resolveLevel(transport, fetched.stream().flatMap(node -> node.children.stream()).toList()));
+    }
+
+    private static Mono<Node> fetch(PipelineTransport transport, Node node) {
+        var downstreamPipeline = node.bridge.downstream_pipeline();
+        boolean samePipeline = node.previous != null && node.previous.pipeline().id() == downstreamPipeline.id();
+        var previousJobs = samePipeline ? node.previous.jobs() : List.<PipelineJob>of();
+        var previousDownstream = samePipeline ? node.previous.downstream() : Map.<Integer, DownstreamPipeline>of();
+        return transport.getJobsFromPipeline(downstreamPipeline)
+                .defaultIfEmpty(previousJobs)
+                .zipWith(transport.getBridges(downstreamPipeline), (jobs, bridges) -> {
+                    node.jobs = jobs;
+                    node.children = nodes(downstreamPipeline, bridges, previousDownstream, node.depth + 1);
+                    return node;
+                });
+    }
+
+    private static Downstream assemble(List<Node> nodes) {
+        var bridgeJobs = new ArrayList<PipelineJob>(nodes.size());
+        var downstream = new HashMap<Integer, DownstreamPipeline>();
+        nodes.forEach(node -> {
+            var pipeline = assemble(node);
+            bridgeJobs.add(node.bridge.toJob(node.pipeline, pipeline == null ? node.bridge.status() : pipeline.effectiveStatus()));
+            if (pipeline != null) {
+                downstream.put(node.bridge.id(), pipeline);
+            }
+        });
+        return new Downstream(List.copyOf(bridgeJobs), Map.copyOf(downstream));
+    }
+
+    /**
+     * @return the downstream pipeline of the bridge, {@code null} if it is not followed
+     */
+    private static DownstreamPipeline assemble(Node node) {
+        if (!node.isFollowed()) return null;
+        if (node.isReused()) return node.previous;
+        var children = assemble(node.children);
+        // the previous jobs a failed listing falls back to already contain the bridges
+        var bridgeIds = children.bridgeJobs().stream().map(PipelineJob::id).collect(Collectors.toSet());
+        var allJobs = Stream.concat(node.jobs.stream().filter(job -> !bridgeIds.contains(job.id())), children.bridgeJobs().stream()).toList();
+        return new DownstreamPipeline(node.bridge.downstream_pipeline(), allJobs, children.downstream());
+    }
+
+    /**
+     * @param bridgeJobs the bridges of a pipeline, each with the effective status of its downstream pipeline
+     * @param downstream the triggered pipelines by bridge job id
+     */
+    record Downstream(List<PipelineJob> bridgeJobs, Map<Integer, DownstreamPipeline> downstream) {
+    }
+
+    /**
+     * A bridge of the tree, filled in when its level is fetched.
+     */
+    private static final class Node {
+
+        private final PipelineDto pipeline;
+        private final BridgeJob bridge;
+        private final DownstreamPipeline previous;
+        private final int depth;
+        private List<PipelineJob> jobs = List.of();
+        private List<Node> children = List.of();
+
+        Node(PipelineDto pipeline, BridgeJob bridge, DownstreamPipeline previous, int depth) {
+            this.pipeline = pipeline;
+            this.bridge = bridge;
+            this.previous = previous;
+            this.depth = depth;
+        }
+
+        boolean isFollowed() {
+            var downstreamPipeline = bridge.downstream_pipeline();
+            return downstreamPipeline != null && downstreamPipeline.status() != null && depth <= MAX_DEPTH;
+        }
+
+        /**
+         * Whether the previous tree holds the same finished pipeline.
+         */
+        boolean isReused() {
+            return previous != null && previous.pipeline().equals(bridge.downstream_pipeline()) && previous.isFinished();
+        }
+
+        boolean needsFetch() {
+            return isFollowed() && !isReused();
+        }
+    }
+}
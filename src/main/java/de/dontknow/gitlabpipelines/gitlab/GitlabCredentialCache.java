@@ -0,0 +1,59 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.intellij.openapi.application.ApplicationManager;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Remembers whether a gitlab url / private-token pair was accepted by the server,
+ * so the credential probe is not repeated for every api call.
+ */
+public class GitlabCredentialCache {
+
+    private static final Duration VALID_TTL = Duration.ofMinutes(5);
+    private static final Duration INVALID_TTL = Duration.ofSeconds(30);
+
+    private final Map<Credentials, Validation> validations = new ConcurrentHashMap<>();
+    private final SingleFlight<Credentials> probes = new SingleFlight<>();
+
+    public static GitlabCredentialCache getInstance() {
+        return ApplicationManager.getApplication()
+                .getService(GitlabCredentialCache.class);
+    }
+
+    /**
+     * Concurrent callers for the same credentials share a single probe. A probe nobody waits for anymore is cancelled.
+     */
+    public Mono<Boolean> isValid(String gitlabUrl, String accesToken, BiFunction<String, String, Mono<Boolean>> probe) {
+        var credentials = new Credentials(gitlabUrl, accesToken);
+        return Mono.defer(() -> {
+            var validation = validations.get(credentials);
+            if (validation != null && !validation.isExpired()) return Mono.just(validation.valid());
+            return probes.execute(credentials, () -> probe.apply(gitlabUrl, accesToken)
+                    .doOnNext(valid -> validations.put(credentials, new Validation(valid, Instant.now()))));
+        });
+    }
+
+    public void invalidate(String gitlabUrl, String accesToken) {
+        validations.remove(new Credentials(gitlabUrl, accesToken));
+    }
+
+    public void invalidateAll() {
+        validations.clear();
+    }
+
+    private record Credentials(String gitlabUrl, String accesToken) {
+    }
+
+    private record Validation(boolean valid, Instant probedAt) {
+        boolean isExpired() {
+            var ttl = valid ? VALID_TTL : INVALID_TTL;
+            return Instant.now().isAfter(probedAt.plus(ttl));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import org.brotli.dec.BrotliInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The {@link HttpClient}s of the plugin. Every gitlab instance gets its own client, so an instance that does not
+ * answer cannot hold up the requests to the others, and it is shut down with its instance. Relay event streams share one client.
+ * They prefer HTTP/2, so the requests of a poll are multiplexed over a single connection per host.
+ */
+final class GitlabHttpClient {
+
+    /**
+     * Upper bound for a single api request, event streams stay open without one.
+     */
+    static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    static final String ACCEPT_ENCODING = "gzip, br";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final int EXECUTOR_THREADS = 2;
+
+    private GitlabHttpClient() {
+    }
+
+    static HttpClient shared() {
+        return Holder.CLIENT;
+    }
+
+    /**
+     * @param name shown in the names of the client's threads
+     */
+    static HttpClient create(String name) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(createExecutor(name))
+                .build();
+    }
+
+    /**
+     * Stops the threads of a client made by {@link #create}. Requests still running on it fail.
+     */
+    static void shutdown(HttpClient client) {
+        client.executor().ifPresent(executor -> {
+            if (executor instanceof ExecutorService executorService) {
+                executorService.shutdownNow();
+            }
+        });
+    }
+
+    private static ExecutorService createExecutor(String name) {
+        var threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(EXECUTOR_THREADS, runnable -> {
+            var thread = new Thread(runnable, "Gitlab Pipelines HTTP " + name + " " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Decompresses a body according to its {@code Content-Encoding}. Bodies without one are returned as they are.
+     */
+    static InputStream decode(HttpHeaders headers, InputStream body) throws IOException {
+        var encoding = headers.firstValue("Content-Encoding").map(String::trim).orElse("");
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(body);
+            case "br" -> new BrotliInputStream(body);
+            case "", "identity" -> body;
+            default -> throw new IOException("Unsupported content encoding: " + encoding);
+        };
+    }
+
+    private static final class Holder {
+        private static final HttpClient CLIENT = create("relay");
+    }
+}
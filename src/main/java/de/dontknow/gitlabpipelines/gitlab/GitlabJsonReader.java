@@ -0,0 +1,357 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import de.dontknow.gitlabpipelines.gitlab.dto.BridgeJob;
+import de.dontknow.gitlabpipelines.gitlab.dto.FailedTestCase;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineHistoryEntry;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import de.dontknow.gitlabpipelines.gitlab.dto.ProjectDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.TestReportSummary;
+import de.dontknow.gitlabpipelines.gitlab.dto.TestSuiteSummary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming readers for the gitlab api responses. Only the fields of the dtos are read, every other
+ * subtree (runner, artifacts, commit, user, ...) is skipped by the parser without being built.
+ */
+class GitlabJsonReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private GitlabJsonReader() {
+    }
+
+    static ProjectDto readProject(InputStream body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            return readProject(parser);
+        }
+    }
+
+    /**
+     * Reads the first pipeline of a pipeline listing and stops parsing there.
+     *
+     * @return the first pipeline, {@code null} if the listing is empty
+     */
+    static PipelineDto readFirstPipeline(InputStream body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+            var token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY) return null;
+            expect(parser, token, JsonToken.START_OBJECT);
+            return readPipeline(parser);
+        }
+    }
+
+    static List<PipelineJob> readJobs(InputStream body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+            var jobs = new ArrayList<PipelineJob>();
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                expect(parser, token, JsonToken.START_OBJECT);
+                jobs.add(readJob(parser));
+            }
+            return List.copyOf(jobs);
+        }
+    }
+
+    static List<BridgeJob> readBridges(InputStream body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+            var bridges = new ArrayList<BridgeJob>();
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                expect(parser, token, JsonToken.START_OBJECT);
+                bridges.add(readBridge(parser));
+            }
+            return List.copyOf(bridges);
+        }
+    }
+
+    /**
+     * Reads a pipeline listing into history entries without jobs.
+     */
+    static List<PipelineHistoryEntry> readPipelineHistory(InputStream body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+            var entries = new ArrayList<PipelineHistoryEntry>();
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                expect(parser, token, JsonToken.START_OBJECT);
+                entries.add(readPipelineHistoryEntry(parser));
+            }
+            return List.copyOf(entries);
+        }
+    }
+
+    static TestReportSummary readTestReportSummary(InputStream body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            var suites = new ArrayList<TestSuiteSummary>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.currentName();
+                var value = parser.nextToken();
+                if ("test_suites".equals(field) && value == JsonToken.START_ARRAY) {
+                    JsonToken token;
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        expect(parser, token, JsonToken.START_OBJECT);
+                        suites.add(readTestSuiteSummary(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new TestReportSummary(List.copyOf(suites));
+        }
+    }
+
+    /**
+     * Reads a full test report, which can be tens of megabytes, and keeps only the failed and erroneous
+     * test cases per suite name. Passed and skipped cases are skipped by the parser without being built.
+     */
+    static Map<String, List<FailedTestCase>> readFailedTestCases(InputStream body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            var failedCases = new HashMap<String, List<FailedTestCase>>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.currentName();
+                var value = parser.nextToken();
+                if ("test_suites".equals(field) && value == JsonToken.START_ARRAY) {
+                    JsonToken token;
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        expect(parser, token, JsonToken.START_OBJECT);
+                        readFailedTestCasesOfSuite(parser, failedCases);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return Map.copyOf(failedCases);
+        }
+    }
+
+    static PipelineJob readJob(InputStream body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            return readJob(parser);
+        }
+    }
+
+    private static ProjectDto readProject(JsonParser parser) throws IOException {
+        String name = null;
+        long id = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getLongValue();
+                case "name" -> name = text(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+        return new ProjectDto(name, id);
+    }
+
+    private static PipelineDto readPipeline(JsonParser parser) throws IOException {
+        int id = 0;
+        int projectId = 0;
+        GitlabStatus status = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getIntValue();
+                case "project_id" -> projectId = parser.getIntValue();
+                case "status" -> status = status(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+        return new PipelineDto(id, projectId, status);
+    }
+
+    private static PipelineHistoryEntry readPipelineHistoryEntry(JsonParser parser) throws IOException {
+        int id = 0;
+        GitlabStatus status = null;
+        Instant createdAt = null;
+        Instant updatedAt = null;
+        String webUrl = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getIntValue();
+                case "status" -> status = status(parser, value);
+                case "created_at" -> createdAt = instant(parser, value);
+                case "updated_at" -> updatedAt = instant(parser, value);
+                case "web_url" -> webUrl = text(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+        return new PipelineHistoryEntry(id, status, createdAt, updatedAt, webUrl, List.of(), false);
+    }
+
+    private static TestSuiteSummary readTestSuiteSummary(JsonParser parser) throws IOException {
+        String name = null;
+        int totalCount = 0;
+        int failedCount = 0;
+        int errorCount = 0;
+        int skippedCount = 0;
+        var buildIds = new ArrayList<Integer>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var value = parser.nextToken();
+            switch (field) {
+                case "name" -> name = text(parser, value);
+                case "total_count" -> totalCount = parser.getIntValue();
+                case "failed_count" -> failedCount = parser.getIntValue();
+                case "error_count" -> errorCount = parser.getIntValue();
+                case "skipped_count" -> skippedCount = parser.getIntValue();
+                case "build_ids" -> {
+                    if (value != JsonToken.START_ARRAY) break;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        buildIds.add(parser.getIntValue());
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return new TestSuiteSummary(name, totalCount, failedCount, errorCount, skippedCount, List.copyOf(buildIds));
+    }
+
+    /**
+     * The suite name may follow its test cases, so the failed cases are collected before they are added.
+     */
+    private static void readFailedTestCasesOfSuite(JsonParser parser, Map<String, List<FailedTestCase>> failedCases) throws IOException {
+        String name = null;
+        var suiteCases = new ArrayList<FailedTestCase>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var value = parser.nextToken();
+            if ("name".equals(field)) {
+                name = text(parser, value);
+            } else if ("test_cases".equals(field) && value == JsonToken.START_ARRAY) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    expect(parser, token, JsonToken.START_OBJECT);
+                    var testCase = readFailedTestCase(parser);
+                    if (testCase != null) suiteCases.add(testCase);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        failedCases.merge(name == null ? "" : name, List.copyOf(suiteCases), (first, second) -> {
+            var merged = new ArrayList<>(first);
+            merged.addAll(second);
+            return List.copyOf(merged);
+        });
+    }
+
+    /**
+     * @return the test case, {@code null} if it did not fail
+     */
+    private static FailedTestCase readFailedTestCase(JsonParser parser) throws IOException {
+        String status = null;
+        String classname = null;
+        String name = null;
+        String systemOutput = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var value = parser.nextToken();
+            switch (field) {
+                case "status" -> status = text(parser, value);
+                case "classname" -> classname = text(parser, value);
+                case "name" -> name = text(parser, value);
+                case "system_output" -> systemOutput = text(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+        if (!"failed".equals(status) && !"error".equals(status)) return null;
+        return new FailedTestCase(classname, name, status, systemOutput);
+    }
+
+    private static PipelineJob readJob(JsonParser parser) throws IOException {
+        int id = 0;
+        String stage = null;
+        GitlabStatus status = null;
+        String name = null;
+        PipelineDto pipeline = null;
+        String webUrl = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getIntValue();
+                case "stage" -> stage = text(parser, value);
+                case "status" -> status = status(parser, value);
+                case "name" -> name = text(parser, value);
+                case "web_url" -> webUrl = text(parser, value);
+                case "pipeline" -> pipeline = value == JsonToken.START_OBJECT ? readPipeline(parser) : null;
+                default -> parser.skipChildren();
+            }
+        }
+        return new PipelineJob(id, stage, status, name, pipeline, webUrl);
+    }
+
+    private static BridgeJob readBridge(JsonParser parser) throws IOException {
+        int id = 0;
+        String stage = null;
+        GitlabStatus status = null;
+        String name = null;
+        String webUrl = null;
+        PipelineDto downstreamPipeline = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getIntValue();
+                case "stage" -> stage = text(parser, value);
+                case "status" -> status = status(parser, value);
+                case "name" -> name = text(parser, value);
+                case "web_url" -> webUrl = text(parser, value);
+                case "downstream_pipeline" -> downstreamPipeline = value == JsonToken.START_OBJECT ? readPipeline(parser) : null;
+                default -> parser.skipChildren();
+            }
+        }
+        return new BridgeJob(id, stage, status, name, webUrl, downstreamPipeline);
+    }
+
+    private static String text(JsonParser parser, JsonToken value) throws IOException {
+        return value == JsonToken.VALUE_NULL ? null : parser.getText();
+    }
+
+    private static Instant instant(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) return null;
+        try {
+            return OffsetDateTime.parse(parser.getText()).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new JsonParseException(parser, "Invalid timestamp " + parser.getText(), e);
+        }
+    }
+
+    private static GitlabStatus status(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) return null;
+        return GitlabStatus.of(parser.getText());
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.intellij.openapi.application.ApplicationManager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Counts what the plugin costs: requests, latencies and bytes per gitlab endpoint, the duration of the poll ticks
+ * and the time spent on the EDT applying updates. Recording is lock free.
+ */
+public class GitlabMetrics {
+
+    private static final Pattern PROJECT_SEGMENT = Pattern.compile("/projects/[^/]+");
+    private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final LatencyHistogram ticks = new LatencyHistogram();
+    private final LongAdder polledWatches = new LongAdder();
+    private final LatencyHistogram edtUpdates = new LatencyHistogram();
+    private volatile Instant startedAt = Instant.now();
+
+    public static GitlabMetrics getInstance() {
+        return ApplicationManager.getApplication()
+                .getService(GitlabMetrics.class);
+    }
+
+    /**
+     * Path of the uri with ids and project paths replaced, e.g. {@code /api/v4/projects/:id/pipelines/:id/jobs}.
+     */
+    static String endpointOf(URI uri) {
+        var path = PROJECT_SEGMENT.matcher(uri.getRawPath()).replaceFirst("/projects/:id");
+        return ID_SEGMENT.matcher(path).replaceAll("/:id");
+    }
+
+    /**
+     * @param nanos time until the response headers arrived, the body is measured by {@link #measureBody}
+     */
+    void recordResponse(String endpoint, int statusCode, long nanos) {
+        var metrics = endpoint(endpoint);
+        metrics.requests.increment();
+        if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            metrics.notModified.increment();
+        } else if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            metrics.errorResponses.increment();
+        }
+        metrics.headerLatency.record(nanos);
+    }
+
+    void recordFailure(String endpoint, long nanos) {
+        var metrics = endpoint(endpoint);
+        metrics.requests.increment();
+        metrics.failures.increment();
+        metrics.headerLatency.record(nanos);
+    }
+
+    /**
+     * Wraps a streamed response body to count the bytes read from it and to record the total latency once it was
+     * read to its end or closed. Other bodies were already read completely, their total latency is recorded at once.
+     *
+     * @param startNanos {@link System#nanoTime()} when the request was sent
+     */
+    @SuppressWarnings("unchecked")
+    <T> T measureBody(String endpoint, T body, long startNanos) {
+        var metrics = endpoint(endpoint);
+        if (!(body instanceof InputStream stream)) {
+            metrics.totalLatency.record(System.nanoTime() - startNanos);
+            return body;
+        }
+        return (T) new FilterInputStream(stream) {
+            private boolean finished;
+
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if (read >= 0) metrics.bytes.increment();
+                else finish();
+                return read;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) metrics.bytes.add(read);
+                else if (read < 0) finish();
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish();
+                super.close();
+            }
+
+            private void finish() {
+                if (finished) return;
+                finished = true;
+                metrics.totalLatency.record(System.nanoTime() - startNanos);
+            }
+        };
+    }
+
+    void recordTick(long nanos, int watches) {
+        ticks.record(nanos);
+        polledWatches.add(watches);
+    }
+
+    public void recordEdtUpdate(long nanos) {
+        edtUpdates.record(nanos);
+    }
+
+    public MetricsSnapshot snapshot() {
+        var endpointSnapshots = new TreeMap<String, MetricsSnapshot.Endpoint>();
+        endpoints.forEach((name, metrics) -> endpointSnapshots.put(name, metrics.snapshot()));
+        return new MetricsSnapshot(Duration.between(startedAt, Instant.now()).toSeconds(), endpointSnapshots,
+                ticks.snapshot(), polledWatches.sum(), edtUpdates.snapshot());
+    }
+
+    public void reset() {
+        endpoints.clear();
+        ticks.reset();
+        polledWatches.reset();
+        edtUpdates.reset();
+        startedAt = Instant.now();
+    }
+
+    private EndpointMetrics endpoint(String endpoint) {
+        var metrics = endpoints.get(endpoint);
+        return metrics != null ? metrics : endpoints.computeIfAbsent(endpoint, name -> new EndpointMetrics());
+    }
+
+    private static class EndpointMetrics {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder notModified = new LongAdder();
+        private final LongAdder errorResponses = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LatencyHistogram headerLatency = new LatencyHistogram();
+        private final LatencyHistogram totalLatency = new LatencyHistogram();
+
+        MetricsSnapshot.Endpoint snapshot() {
+            return new MetricsSnapshot.Endpoint(requests.sum(), notModified.sum(), errorResponses.sum(), failures.sum(), bytes.sum(),
+                    headerLatency.snapshot(), totalLatency.snapshot());
+        }
+    }
+}
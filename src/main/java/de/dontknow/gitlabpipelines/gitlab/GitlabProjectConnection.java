@@ -1,173 +1,502 @@
 package de.dontknow.gitlabpipelines.gitlab;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.dontknow.gitlabpipelines.config.GitlabConnectionStorage;
+import de.dontknow.gitlabpipelines.gitlab.dto.BridgeJob;
+import de.dontknow.gitlabpipelines.gitlab.dto.FailedTestCase;
 import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineHistoryEntry;
 import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
 import de.dontknow.gitlabpipelines.gitlab.dto.ProjectDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.TestReportSummary;
 import git4idea.repo.GitRepository;
-import org.jetbrains.annotations.NotNull;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-public class GitlabProjectConnection {
+/**
+ * Rest api client of one configured gitlab instance. Each instance has its own http client, request governors
+ * and caches, so a slow instance never holds up the others.
+ */
+public class GitlabProjectConnection implements PipelineTransport {
+
+    private static final int JOBS_PER_PAGE = 100;
+    private static final int MAX_CONCURRENCY_PER_HOST = 4;
+    private static final int MAX_RATE_LIMIT_RETRIES = 3;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
 
     private final ObjectMapper mapper = new ObjectMapper();
-    private final HttpClient httpClient = HttpClient.newHttpClient();
-
-    public ProjectDto getProject(GitRepository gitRepository) throws URISyntaxException, IOException {
-        GitlabConfig gitlabConfig = getGitlabConfig();
-        if (!gitlabConfig.isValied) return null;
-        var encodedProjectPath = getGitRepoOriginPath(gitRepository);
-        if (encodedProjectPath.isEmpty()) return null;
-
-        HttpRequest projectListRequest = HttpRequest.newBuilder()
-                .uri(new URI(String.format("%s/api/v4/projects/%s", gitlabConfig.gitlabUrl(), encodedProjectPath.get())))
-                .GET()
-                .header("Private-Token", gitlabConfig.accesToken())
-                .build();
-        HttpResponse<String> projectList = null;
-        try {
-            projectList = httpClient.send(projectListRequest, HttpResponse.BodyHandlers.ofString());
-        } catch (InterruptedException ignored) {
-        }
-        if (projectList != null && projectList.statusCode() == 200) {
-            return mapper.readValue(projectList.body(), ProjectDto.class);
-        }
-        return null;
+    private final String gitlabUrl;
+    private final HttpClient httpClient;
+    private final GitlabResponseCache responseCache = new GitlabResponseCache();
+    private final Map<String, RequestGovernor> hostGovernors = new ConcurrentHashMap<>();
+    private final SingleFlight<RequestKey> inFlightRequests = new SingleFlight<>();
+    private final Supplier<Mono<GitlabConfig>> gitlabConfigSource;
+    private final GitlabMetrics metrics;
+
+    /**
+     * Connection to a gitlab instance configured in {@link GitlabConnectionStorage}, the token is looked up on every request.
+     *
+     * @param gitlabUrl the {@link GitlabConnectionStorage#normalizeUrl normalized} url of the instance
+     */
+    public GitlabProjectConnection(String gitlabUrl) {
+        this.gitlabUrl = gitlabUrl;
+        this.httpClient = GitlabHttpClient.create(clientName(gitlabUrl));
+        this.gitlabConfigSource = this::getGitlabConfig;
+        this.metrics = GitlabMetrics.getInstance();
     }
 
-    public PipelineDto getLatestPipeline(ProjectDto projectDto, String branch) throws URISyntaxException, IOException {
-        var gitlabConfig = getGitlabConfig();
-        if (!gitlabConfig.isValied) return null;
+    /**
+     * Connection with fixed credentials that are not probed, e.g. for benchmarks against a stub server.
+     */
+    GitlabProjectConnection(String gitlabUrl, String accesToken) {
+        var gitlabConfig = new GitlabConfig(gitlabUrl, accesToken, true);
+        this.gitlabUrl = gitlabUrl;
+        this.httpClient = GitlabHttpClient.create(clientName(gitlabUrl));
+        this.gitlabConfigSource = () -> Mono.just(gitlabConfig);
+        this.metrics = new GitlabMetrics();
+    }
 
-        HttpRequest projectListRequest = HttpRequest.newBuilder()
-                .uri(new URI(String.format("%s/api/v4/projects/%s/pipelines?ref=%s", gitlabConfig.gitlabUrl, projectDto.id(), branch)))
-                .GET()
-                .header("Private-Token", gitlabConfig.accesToken())
-                .build();
-        HttpResponse<String> projectList = null;
-        try {
-            projectList = httpClient.send(projectListRequest, HttpResponse.BodyHandlers.ofString());
-        } catch (InterruptedException ignored) {
+    private static String clientName(String gitlabUrl) {
+        var host = extractHost(gitlabUrl);
+        return host == null ? "probe" : host;
+    }
 
-        }
-        if (projectList.statusCode() == 200) {
-            var pipelineDtos = mapper.readValue(projectList.body(), new TypeReference<List<PipelineDto>>() {
-            });
-            if (!pipelineDtos.isEmpty()) {
-                return pipelineDtos.get(0);
+    public String getGitlabUrl() {
+        return gitlabUrl;
+    }
+
+    /**
+     * Shuts down the http client of the connection once its instance was removed from the settings.
+     */
+    void close() {
+        GitlabHttpClient.shutdown(httpClient);
+    }
+
+    public Mono<ProjectDto> getProject(GitRepository gitRepository) {
+        return withGitlabConfig(gitlabConfig -> Mono.justOrEmpty(getGitRepoOriginPath(gitRepository))
+                .flatMap(encodedProjectPath -> {
+                    var uri = URI.create(String.format("%s/api/v4/projects/%s", gitlabConfig.gitlabUrl(), encodedProjectPath));
+                    return get(uri, gitlabConfig, RequestPriority.INTERACTIVE, GitlabJsonReader::readProject);
+                })
+                .map(GitlabResponse::value));
+    }
+
+    /**
+     * Completes empty only if gitlab listed no pipeline for the ref. Missing credentials and any answer other than
+     * {@code 200 OK} fail, so the last known pipeline stays shown.
+     */
+    @Override
+    public Mono<PipelineDto> getLatestPipeline(long projectId, String branch) {
+        return gitlabConfigSource.get()
+                .filter(GitlabConfig::isValied)
+                .switchIfEmpty(Mono.error(() -> new IOException("No valid gitlab credentials for " + gitlabUrl)))
+                .flatMap(gitlabConfig -> {
+                    var uri = URI.create(String.format("%s/api/v4/projects/%s/pipelines?ref=%s&per_page=1", gitlabConfig.gitlabUrl, projectId, URLEncoder.encode(branch, StandardCharsets.UTF_8)));
+                    return get(uri, gitlabConfig, RequestPriority.PIPELINE, GitlabJsonReader::readFirstPipeline)
+                            .switchIfEmpty(Mono.error(() -> new IOException("Gitlab did not list the pipelines of " + uri)))
+                            .mapNotNull(GitlabResponse::value);
+                });
+    }
+
+    public Mono<TestReportSummary> getTestReportSummary(PipelineDto pipelineDto) {
+        return withGitlabConfig(gitlabConfig -> {
+            var uri = URI.create(gitlabConfig.gitlabUrl() + "/api/v4/projects/" + pipelineDto.project_id() + "/pipelines/" + pipelineDto.id() + "/test_report_summary");
+            return get(uri, gitlabConfig, RequestPriority.INTERACTIVE, GitlabJsonReader::readTestReportSummary)
+                    .map(GitlabResponse::value);
+        });
+    }
+
+    /**
+     * Downloads the full test report of a pipeline, keeping only the failed test cases per suite name.
+     */
+    public Mono<Map<String, List<FailedTestCase>>> getFailedTestCases(PipelineDto pipelineDto) {
+        return withGitlabConfig(gitlabConfig -> {
+            var uri = URI.create(gitlabConfig.gitlabUrl() + "/api/v4/projects/" + pipelineDto.project_id() + "/pipelines/" + pipelineDto.id() + "/test_report");
+            return get(uri, gitlabConfig, RequestPriority.INTERACTIVE, GitlabJsonReader::readFailedTestCases)
+                    .map(GitlabResponse::value);
+        });
+    }
+
+    /**
+     * Lists the newest pipelines of a ref, optionally only those updated after the given time.
+     *
+     * @param updatedAfter lower bound of {@code updated_at}, {@code null} for all pipelines
+     */
+    public Mono<List<PipelineHistoryEntry>> getPipelineHistory(long projectId, String ref, Instant updatedAfter, int limit) {
+        return withGitlabConfig(gitlabConfig -> {
+            var query = "ref=" + URLEncoder.encode(ref, StandardCharsets.UTF_8) + "&order_by=id&sort=desc&per_page=" + limit;
+            if (updatedAfter != null) {
+                query += "&updated_after=" + URLEncoder.encode(updatedAfter.toString(), StandardCharsets.UTF_8);
             }
-        }
-        return null;
+            var uri = URI.create(gitlabConfig.gitlabUrl() + "/api/v4/projects/" + projectId + "/pipelines?" + query);
+            return get(uri, gitlabConfig, RequestPriority.INTERACTIVE, GitlabJsonReader::readPipelineHistory)
+                    .map(GitlabResponse::value);
+        });
     }
 
-    public List<PipelineJob> getJobsFromPipeline(PipelineDto pipelineDto) throws URISyntaxException, IOException {
-        var gitlabConfig = getGitlabConfig();
-        if (!gitlabConfig.isValied) return null;
+    /**
+     * Reads all pages of the pipeline's job listing. Completes empty if any page could not be read.
+     */
+    @Override
+    public Mono<List<PipelineJob>> getJobsFromPipeline(PipelineDto pipelineDto) {
+        return withGitlabConfig(gitlabConfig -> getJobsPage(gitlabConfig, pipelineDto, "1")
+                .expand(page -> page.nextPage()
+                        .map(nextPage -> getJobsPage(gitlabConfig, pipelineDto, nextPage))
+                        .orElse(Mono.empty()))
+                .collectList()
+                .filter(pages -> pages.stream().allMatch(page -> page.value() != null))
+                .map(pages -> pages.stream().flatMap(page -> page.value().stream()).toList()));
+    }
 
-        HttpRequest projectListRequest = HttpRequest.newBuilder()
-                .uri(new URI(gitlabConfig.gitlabUrl + "/api/v4/projects/" + pipelineDto.project_id() + "/pipelines/" + pipelineDto.id() + "/jobs?per_page=200"))
-                .GET()
-                .header("Private-Token", gitlabConfig.accesToken())
-                .build();
-        HttpResponse<String> projectList = null;
-        try {
-            projectList = httpClient.send(projectListRequest, HttpResponse.BodyHandlers.ofString());
-        } catch (InterruptedException ignored) {
+    private Mono<GitlabResponse<List<PipelineJob>>> getJobsPage(GitlabConfig gitlabConfig, PipelineDto pipelineDto, String page) {
+        var uri = URI.create(gitlabConfig.gitlabUrl + "/api/v4/projects/" + pipelineDto.project_id() + "/pipelines/" + pipelineDto.id() + "/jobs?per_page=" + JOBS_PER_PAGE + "&page=" + page);
+        return get(uri, gitlabConfig, RequestPriority.JOBS, GitlabJsonReader::readJobs)
+                .defaultIfEmpty(new GitlabResponse<>(null, null));
+    }
 
-        }
-        if (projectList.statusCode() == 200) {
-            return mapper.readValue(projectList.body(), new TypeReference<>() {
-            });
-        }
-        return null;
+    /**
+     * Lists the trigger jobs of the pipeline with the downstream pipelines they started. Gitlab versions without
+     * the endpoint and projects the token may not read answer with no bridges.
+     */
+    @Override
+    public Mono<List<BridgeJob>> getBridges(PipelineDto pipelineDto) {
+        return withGitlabConfig(gitlabConfig -> {
+            var uri = URI.create(gitlabConfig.gitlabUrl + "/api/v4/projects/" + pipelineDto.project_id() + "/pipelines/" + pipelineDto.id() + "/bridges?per_page=" + JOBS_PER_PAGE);
+            return get(uri, gitlabConfig, RequestPriority.JOBS, GitlabJsonReader::readBridges)
+                    .map(GitlabResponse::value);
+        }).defaultIfEmpty(List.of());
     }
 
-    public PipelineJob getJob(long projectId, int jobsID) {
-        GitlabConfig gitlabConfig = getGitlabConfig();
-        if (!gitlabConfig.isValied) return null;
+    public Mono<PipelineJob> getJob(long projectId, int jobsID) {
+        return withGitlabConfig(gitlabConfig -> {
+            var uri = URI.create(gitlabConfig.gitlabUrl + "/api/v4/projects/" + projectId + "/jobs/" + jobsID);
+            return get(uri, gitlabConfig, RequestPriority.SINGLE_JOB, GitlabJsonReader::readJob)
+                    .map(GitlabResponse::value);
+        }).onErrorResume(IOException.class, e -> Mono.empty());
+    }
 
-        try {
-            HttpRequest projectListRequest = HttpRequest.newBuilder()
-                    .uri(new URI(gitlabConfig.gitlabUrl + "/api/v4/projects/" + projectId + "/jobs/" + jobsID))
+    /**
+     * Reads the log of a job from the given offset on with a {@code Range} request, so a growing log is never
+     * downloaded twice. The first request ({@code offset == 0}) only asks for the last {@code tailBytes} bytes.
+     * Servers ignoring the range are handled as well, the skipped part of their answer is read but not kept and the
+     * chunk is marked {@link TraceChunk#rangeIgnored()}.
+     */
+    Mono<TraceChunk> getTraceChunk(long projectId, int jobId, long offset, int tailBytes) {
+        return withGitlabConfig(gitlabConfig -> Mono.defer(() -> {
+            var uri = URI.create(gitlabConfig.gitlabUrl() + "/api/v4/projects/" + projectId + "/jobs/" + jobId + "/trace");
+            var request = HttpRequest.newBuilder()
+                    .uri(uri)
                     .GET()
+                    .timeout(GitlabHttpClient.REQUEST_TIMEOUT)
                     .header("Private-Token", gitlabConfig.accesToken())
+                    .header("Range", offset > 0 ? "bytes=" + offset + "-" : "bytes=-" + tailBytes)
                     .build();
-            HttpResponse<String> projectList = null;
-            projectList = httpClient.send(projectListRequest, HttpResponse.BodyHandlers.ofString());
-            if (projectList.statusCode() == 200) {
-                return mapper.readValue(projectList.body(), PipelineJob.class);
+            var endpoint = GitlabMetrics.endpointOf(uri);
+            return send(request, endpoint, RequestPriority.INTERACTIVE, HttpResponse.BodyHandlers.ofInputStream())
+                    .handle((response, sink) -> {
+                        checkAuthorization(response, gitlabConfig);
+                        try (var body = response.body()) {
+                            switch (response.statusCode()) {
+                                case HttpURLConnection.HTTP_PARTIAL -> sink.next(new TraceChunk(body.readAllBytes(),
+                                        contentRangeStart(response.headers()).orElse(offset), false));
+                                case HTTP_RANGE_NOT_SATISFIABLE -> sink.next(new TraceChunk(new byte[0], offset, false));
+                                case HttpURLConnection.HTTP_OK -> sink.next(offset > 0 ? skip(body, offset) : tail(body, tailBytes));
+                                default -> {
+                                    // no log (yet)
+                                }
+                            }
+                        } catch (IOException e) {
+                            sink.error(e);
+                        }
+                    });
+        }));
+    }
+
+    private static Optional<Long> contentRangeStart(HttpHeaders headers) {
+        return headers.firstValue("Content-Range")
+                .map(contentRange -> contentRange.replaceFirst("^bytes\\s+", ""))
+                .filter(range -> range.matches("\\d+-\\d+/.*"))
+                .map(range -> Long.parseLong(range.substring(0, range.indexOf('-'))));
+    }
+
+    private static TraceChunk skip(InputStream body, long offset) throws IOException {
+        long skipped = 0;
+        while (skipped < offset) {
+            long count = body.skip(offset - skipped);
+            if (count <= 0) {
+                if (body.read() < 0) break;
+                count = 1;
             }
-        } catch (URISyntaxException | IOException | InterruptedException ignored) {
+            skipped += count;
+        }
+        var bytes = body.readAllBytes();
+        return new TraceChunk(bytes, skipped, skipped > 0 || bytes.length > 0);
+    }
 
+    /**
+     * Keeps the last {@code limit} bytes of the body without holding all of it.
+     */
+    private static TraceChunk tail(InputStream body, int limit) throws IOException {
+        var ring = new byte[limit];
+        long total = 0;
+        int read;
+        while ((read = body.read(ring, (int) (total % limit), limit - (int) (total % limit))) > 0) {
+            total += read;
         }
-        return null;
+        int kept = (int) Math.min(total, limit);
+        var bytes = new byte[kept];
+        int end = (int) (total % limit);
+        if (total <= limit) {
+            System.arraycopy(ring, 0, bytes, 0, kept);
+        } else {
+            System.arraycopy(ring, end, bytes, 0, limit - end);
+            System.arraycopy(ring, 0, bytes, limit - end, end);
+        }
+        // a log shorter than the range is a valid answer, only a longer one shows the range was ignored
+        return new TraceChunk(bytes, total - kept, total > limit);
     }
 
-    boolean isValidURL(String toTest, String token) {
-        try {
-            HttpRequest projectListRequest = HttpRequest.newBuilder()
-                    .uri(new URI(toTest + "/api/v4/projects/"))
-                    .GET()
-                    .header("Private-Token", token)
+    /**
+     * Posts a query to the graphql api of the configured gitlab.
+     *
+     * @param requestBody the json request with {@code query} and {@code variables}
+     * @return the parsed response, empty if gitlab is not configured or did not answer with 200
+     */
+    Mono<JsonNode> postGraphql(byte[] requestBody) {
+        return withGitlabConfig(gitlabConfig -> {
+            var uri = URI.create(gitlabConfig.gitlabUrl() + "/api/graphql");
+            var key = new RequestKey(uri, gitlabConfig.accesToken(), new String(requestBody, StandardCharsets.UTF_8));
+            return inFlightRequests.execute(key, () -> post(uri, gitlabConfig, requestBody));
+        });
+    }
+
+    private Mono<JsonNode> post(URI uri, GitlabConfig gitlabConfig, byte[] requestBody) {
+        return Mono.defer(() -> {
+            var request = HttpRequest.newBuilder()
+                    .uri(uri)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(requestBody))
+                    .timeout(GitlabHttpClient.REQUEST_TIMEOUT)
+                    .header("Content-Type", "application/json")
+                    .header("Accept-Encoding", GitlabHttpClient.ACCEPT_ENCODING)
+                    .header("Authorization", "Bearer " + gitlabConfig.accesToken())
                     .build();
-            var httpResponse = httpClient.send(projectListRequest, HttpResponse.BodyHandlers.ofString());
-            return httpResponse.statusCode() == HttpURLConnection.HTTP_OK;
-        } catch (URISyntaxException | IOException | InterruptedException e) {
-            return false;
-        }
+            var endpoint = GitlabMetrics.endpointOf(uri);
+            return send(request, endpoint, RequestPriority.PIPELINE, HttpResponse.BodyHandlers.ofInputStream())
+                    .handle((response, sink) -> {
+                        checkAuthorization(response, gitlabConfig);
+                        try (var body = response.body()) {
+                            if (response.statusCode() != HttpURLConnection.HTTP_OK) return;
+                            sink.next(mapper.readTree(GitlabHttpClient.decode(response.headers(), body)));
+                        } catch (IOException e) {
+                            sink.error(e);
+                        }
+                    });
+        });
     }
 
-    private Optional<String> getGitRepoOriginPath(GitRepository gitRepository) {
+    public GitlabResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    private <T> Mono<T> withGitlabConfig(Function<GitlabConfig, Mono<T>> request) {
+        return gitlabConfigSource.get()
+                .filter(GitlabConfig::isValied)
+                .flatMap(request);
+    }
+
+    /**
+     * Issues a conditional GET. A {@code 304 Not Modified} answer is served from the
+     * {@link GitlabResponseCache} without reading or parsing a body. Other bodies are parsed while they stream in.
+     * Callers asking for the same uri with the same token while a request is in flight share its response.
+     */
+    private <T> Mono<GitlabResponse<T>> get(URI uri, GitlabConfig gitlabConfig, RequestPriority priority, ResponseReader<T> reader) {
+        return inFlightRequests.execute(new RequestKey(uri, gitlabConfig.accesToken(), null), () -> fetch(uri, gitlabConfig, priority, reader));
+    }
+
+    private <T> Mono<GitlabResponse<T>> fetch(URI uri, GitlabConfig gitlabConfig, RequestPriority priority, ResponseReader<T> reader) {
+        return Mono.defer(() -> {
+            var cached = responseCache.get(uri, gitlabConfig.accesToken());
+            var requestBuilder = HttpRequest.newBuilder()
+                    .uri(uri)
+                    .GET()
+                    .timeout(GitlabHttpClient.REQUEST_TIMEOUT)
+                    .header("Accept-Encoding", GitlabHttpClient.ACCEPT_ENCODING)
+                    .header("Private-Token", gitlabConfig.accesToken());
+            if (cached != null) {
+                requestBuilder.header("If-None-Match", cached.etag());
+            }
+            var endpoint = GitlabMetrics.endpointOf(uri);
+            return send(requestBuilder.build(), endpoint, priority, HttpResponse.BodyHandlers.ofInputStream())
+                    .handle((response, sink) -> {
+                        checkAuthorization(response, gitlabConfig);
+                        try (var body = response.body()) {
+                            if (response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                                responseCache.recordHit();
+                                @SuppressWarnings("unchecked") T value = (T) cached.value();
+                                sink.next(new GitlabResponse<>(value, cached.headers()));
+                                return;
+                            }
+                            if (response.statusCode() != HttpURLConnection.HTTP_OK) return;
+                            T value = reader.read(GitlabHttpClient.decode(response.headers(), body));
+                            response.headers().firstValue("ETag").ifPresent(etag -> {
+                                responseCache.recordMiss();
+                                responseCache.put(uri, gitlabConfig.accesToken(), new GitlabResponseCache.Entry(etag, value, response.headers()));
+                            });
+                            sink.next(new GitlabResponse<>(value, response.headers()));
+                        } catch (IOException e) {
+                            sink.error(e);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Sends the request without blocking the calling thread. The {@link RequestGovernor} of the host lets at most
+     * {@value #MAX_CONCURRENCY_PER_HOST} requests through at once, in priority order and at the rate gitlab allows.
+     * A {@code 429 Too Many Requests} is retried up to {@value #MAX_RATE_LIMIT_RETRIES} times once the host may be asked again.
+     * The latency is recorded twice, when the headers arrive and once the caller has read the body.
+     */
+    private <T> Mono<HttpResponse<T>> send(HttpRequest request, String endpoint, RequestPriority priority, HttpResponse.BodyHandler<T> bodyHandler) {
+        var governor = hostGovernors.computeIfAbsent(request.uri().getHost(), host -> new RequestGovernor(MAX_CONCURRENCY_PER_HOST));
+        return governor.limit(priority, Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    HttpResponse.BodyHandler<T> measuredBodyHandler = responseInfo -> HttpResponse.BodySubscribers.mapping(
+                            bodyHandler.apply(responseInfo), body -> metrics.measureBody(endpoint, body, start));
+                    return Mono.fromFuture(() -> httpClient.sendAsync(request, measuredBodyHandler))
+                            .doOnNext(response -> metrics.recordResponse(endpoint, response.statusCode(), System.nanoTime() - start))
+                            .doOnError(e -> metrics.recordFailure(endpoint, System.nanoTime() - start))
+                            // bodies are read blocking, which must not tie up the few threads of the http client
+                            .publishOn(Schedulers.boundedElastic());
+                }))
+                .doOnNext(response -> governor.onResponse(response.statusCode(), response.headers()))
+                .<HttpResponse<T>>handle((response, sink) -> {
+                    if (response.statusCode() != RequestGovernor.HTTP_TOO_MANY_REQUESTS) {
+                        sink.next(response);
+                        return;
+                    }
+                    if (response.body() instanceof InputStream body) {
+                        try {
+                            body.close();
+                        } catch (IOException ignored) {
+                            // the connection is dropped anyway
+                        }
+                    }
+                    sink.error(new RateLimitedException(request.uri()));
+                })
+                .retryWhen(Retry.max(MAX_RATE_LIMIT_RETRIES).filter(RateLimitedException.class::isInstance));
+    }
+
+    public GitlabMetrics getMetrics() {
+        return metrics;
+    }
+
+    Mono<Boolean> isValidURL(String toTest, String token) {
+        return Mono.defer(() -> {
+                    var uri = URI.create(toTest + "/api/v4/projects/?per_page=1&simple=true");
+                    return inFlightRequests.execute(new RequestKey(uri, token, null), () -> Mono.defer(() -> {
+                        HttpRequest projectListRequest = HttpRequest.newBuilder()
+                                .uri(uri)
+                                .GET()
+                                .timeout(GitlabHttpClient.REQUEST_TIMEOUT)
+                                .header("Private-Token", token)
+                                .build();
+                        return send(projectListRequest, GitlabMetrics.endpointOf(uri), RequestPriority.INTERACTIVE, HttpResponse.BodyHandlers.discarding())
+                                .map(httpResponse -> httpResponse.statusCode() == HttpURLConnection.HTTP_OK);
+                    }));
+                })
+                .onErrorReturn(false);
+    }
+
+    /**
+     * @return the url of the origin remote, or of the first remote if there is no origin
+     */
+    public static Optional<String> getRemoteUrl(GitRepository gitRepository) {
         var originRemote = gitRepository.getRemotes().stream()
                 .filter(remote -> "origin".equals(remote.getName()))
                 .findFirst()
                 .orElse(gitRepository.getRemotes().stream().findFirst().orElse(null));
         if (originRemote == null) return Optional.empty();
-        if (originRemote.getFirstUrl() == null) return Optional.empty();
-        var projectPath = extractProjectPath(originRemote.getFirstUrl());
-        if (projectPath == null) return Optional.empty();
-        return Optional.of(URLEncoder.encode(projectPath, StandardCharsets.UTF_8));
+        return Optional.ofNullable(originRemote.getFirstUrl());
+    }
+
+    private static Optional<String> getGitRepoOriginPath(GitRepository gitRepository) {
+        return getRemoteUrl(gitRepository)
+                .map(GitlabProjectConnection::extractProjectPath)
+                .map(projectPath -> URLEncoder.encode(projectPath, StandardCharsets.UTF_8));
     }
 
 
-    private GitlabProjectConnection.@NotNull GitlabConfig getGitlabConfig() {
+    private Mono<GitlabConfig> getGitlabConfig() {
         GitlabConnectionStorage configInstance = GitlabConnectionStorage.getInstance();
-        if (configInstance == null) return new GitlabConfig(null, null, false);
-        if (configInstance.getState() == null) return new GitlabConfig(null, null, false);
-        String gitlabUrl = configInstance.getState().gitlabUrl;
-        String accesToken = configInstance.getState().privateToken;
+        if (configInstance == null) return Mono.just(new GitlabConfig(null, null, false));
+        if (configInstance.getState() == null) return Mono.just(new GitlabConfig(null, null, false));
+        String accesToken = configInstance.getPrivateToken(gitlabUrl);
         return getGitlabConfig(gitlabUrl, accesToken);
     }
 
-    private @NotNull GitlabConfig getGitlabConfig(String gitlabUrl, String accesToken) {
-        if (accesToken == null || accesToken.isEmpty()) return new GitlabConfig(null, null, false);
-        if (gitlabUrl == null) return new GitlabConfig(null, null, false);
-        if (!isValidURL(gitlabUrl, accesToken)) return new GitlabConfig(null, null, false);
-        return new GitlabConfig(gitlabUrl, accesToken, true);
+    private Mono<GitlabConfig> getGitlabConfig(String gitlabUrl, String accesToken) {
+        if (accesToken == null || accesToken.isEmpty()) return Mono.just(new GitlabConfig(null, null, false));
+        if (gitlabUrl == null) return Mono.just(new GitlabConfig(null, null, false));
+        return GitlabCredentialCache.getInstance().isValid(gitlabUrl, accesToken, this::isValidURL)
+                .map(valid -> valid ? new GitlabConfig(gitlabUrl, accesToken, true) : new GitlabConfig(null, null, false));
     }
 
-    public boolean isValid() {
-        return getGitlabConfig().isValied();
+    /**
+     * Only a {@code 401} means the token is no longer valid. A {@code 403} is about a single resource the token may
+     * not read, e.g. the project of a downstream pipeline, and is answered like a missing resource.
+     */
+    private static void checkAuthorization(HttpResponse<?> response, GitlabConfig gitlabConfig) {
+        if (response == null) return;
+        if (response.statusCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+            GitlabCredentialCache.getInstance().invalidate(gitlabConfig.gitlabUrl(), gitlabConfig.accesToken());
+        }
+    }
+
+    public Mono<Boolean> isValid() {
+        return getGitlabConfig().map(GitlabConfig::isValied);
+    }
+
+    public Mono<Boolean> isValid(String gitlabUrl, String accesToken) {
+        return getGitlabConfig(gitlabUrl, accesToken).map(GitlabConfig::isValied);
     }
 
-    public boolean isValid(String gitlabUrl, String accesToken) {
-        return getGitlabConfig(gitlabUrl, accesToken).isValied();
+    /**
+     * @return the host of a remote or gitlab url, {@code null} if it has none
+     */
+    static String extractHost(String gitPullUrl) {
+        if (gitPullUrl == null) return null;
+        if (gitPullUrl.startsWith("git@")) {
+            int colonIndex = gitPullUrl.indexOf(':');
+            return colonIndex < 0 ? null : gitPullUrl.substring("git@".length(), colonIndex);
+        }
+        try {
+            return URI.create(gitPullUrl.trim()).getHost();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
-    private String extractProjectPath(String gitPullUrl) {
+    private static String extractProjectPath(String gitPullUrl) {
         if (gitPullUrl.startsWith("git@")) {
             int colonIndex = gitPullUrl.indexOf(':');
             String path = gitPullUrl.substring(colonIndex + 1);
@@ -176,7 +505,7 @@ public class GitlabProjectConnection {
             }
             return path;
         }
-        if (gitPullUrl.startsWith("https://") || gitPullUrl.startsWith("http://")) {
+        if (gitPullUrl.startsWith("https://") || gitPullUrl.startsWith("http://") || gitPullUrl.startsWith("ssh://")) {
             URI uri = URI.create(gitPullUrl);
             String path = uri.getPath();
             if (path.startsWith("/")) {
@@ -191,6 +520,33 @@ public class GitlabProjectConnection {
     }
 
 
+    private record GitlabResponse<T>(T value, HttpHeaders headers) {
+        Optional<String> nextPage() {
+            if (headers == null) return Optional.empty();
+            return headers.firstValue("X-Next-Page").filter(next -> !next.isBlank());
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(InputStream body) throws IOException;
+    }
+
     private record GitlabConfig(String gitlabUrl, String accesToken, boolean isValied) {
     }
+
+    /**
+     * Identifies identical requests for the {@link SingleFlight}, {@code body} is {@code null} for a GET.
+     */
+    private record RequestKey(URI uri, String accesToken, String body) {
+    }
+
+    /**
+     * Gitlab still answered {@code 429 Too Many Requests} after all retries.
+     */
+    static class RateLimitedException extends IOException {
+        RateLimitedException(URI uri) {
+            super("Rate limited by gitlab: " + uri);
+        }
+    }
 }
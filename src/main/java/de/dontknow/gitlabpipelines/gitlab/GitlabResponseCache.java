@@ -0,0 +1,63 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of the last ETag and parsed response per request, used to answer
+ * {@code 304 Not Modified} responses without downloading and parsing the body again.
+ */
+public class GitlabResponseCache {
+
+    private static final int MAX_ENTRIES = 128;
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    synchronized Entry get(URI uri, String accesToken) {
+        return entries.get(new Key(uri, accesToken));
+    }
+
+    synchronized void put(URI uri, String accesToken, Entry entry) {
+        entries.put(new Key(uri, accesToken), entry);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of {@code 200 OK} answers that populated or replaced an entry. Failed requests and answers
+     * without an ETag are not counted.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    record Entry(String etag, Object value, HttpHeaders headers) {
+    }
+
+    private record Key(URI uri, String accesToken) {
+    }
+}
@@ -0,0 +1,216 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.dontknow.gitlabpipelines.gitlab.dto.BridgeJob;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fetches the latest pipelines of all refs polled in one tick with a single graphql query, including their
+ * stages and jobs. Requests arriving within {@link #BATCH_WINDOW} are collected into one query, the jobs
+ * of the answer serve the following {@link #getJobsFromPipeline} call without another request.
+ * Everything the query does not cover falls back to the rest api.
+ */
+class GraphqlPipelineTransport implements PipelineTransport {
+
+    private static final Duration BATCH_WINDOW = Duration.ofMillis(20);
+    private static final Duration BATCHED_JOBS_TTL = Duration.ofMinutes(1);
+    private static final int MAX_KEYS_PER_QUERY = 5;
+    private static final int JOBS_PER_STAGE = 100;
+    private static final String PIPELINE_FIELDS = """
+            nodes {
+              webUrl
+              pipelines(ref: $ref%1$d, first: 1) {
+                nodes {
+                  id
+                  status
+                  stages {
+                    nodes {
+                      name
+                      jobs(first: %2$d) {
+                        pageInfo { hasNextPage }
+                        nodes { id name status }
+                      }
+                    }
+                  }
+                }
+              }
+            }""";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final GitlabProjectConnection restConnection;
+    private final Queue<PendingRequest> pendingRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Map<Integer, BatchedJobs> batchedJobs = new ConcurrentHashMap<>();
+
+    GraphqlPipelineTransport(GitlabProjectConnection restConnection) {
+        this.restConnection = restConnection;
+    }
+
+    @Override
+    public Mono<PipelineDto> getLatestPipeline(long projectId, String ref) {
+        return Mono.create(sink -> {
+            pendingRequests.add(new PendingRequest(new PipelineKey(restConnection.getGitlabUrl(), projectId, ref), sink));
+            if (flushScheduled.compareAndSet(false, true)) {
+                Mono.delay(BATCH_WINDOW).subscribe(tick -> flush());
+            }
+        });
+    }
+
+    @Override
+    public Mono<List<PipelineJob>> getJobsFromPipeline(PipelineDto pipelineDto) {
+        var batched = batchedJobs.remove(pipelineDto.id());
+        if (batched != null) return Mono.just(batched.jobs());
+        return restConnection.getJobsFromPipeline(pipelineDto);
+    }
+
+    /**
+     * Bridges are not part of the batched query, they are listed over rest.
+     */
+    @Override
+    public Mono<List<BridgeJob>> getBridges(PipelineDto pipelineDto) {
+        return restConnection.getBridges(pipelineDto);
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        var requestsByKey = new LinkedHashMap<PipelineKey, List<MonoSink<PipelineDto>>>();
+        PendingRequest pendingRequest;
+        while ((pendingRequest = pendingRequests.poll()) != null) {
+            requestsByKey.computeIfAbsent(pendingRequest.key(), key -> new ArrayList<>()).add(pendingRequest.sink());
+        }
+        var now = Instant.now();
+        batchedJobs.values().removeIf(batched -> batched.fetchedAt().plus(BATCHED_JOBS_TTL).isBefore(now));
+        Flux.fromIterable(requestsByKey.keySet())
+                .buffer(MAX_KEYS_PER_QUERY)
+                .subscribe(keys -> query(keys).switchIfEmpty(Mono.error(() -> new IOException("Gitlab graphql query got no answer"))).subscribe(
+                        pipelines -> keys.forEach(key -> {
+                            var pipeline = pipelines.get(key);
+                            requestsByKey.get(key).forEach(sink -> {
+                                if (pipeline == null) {
+                                    sink.error(new IOException("Gitlab graphql query did not return project " + key.projectId()));
+                                } else if (pipeline.isEmpty()) {
+                                    sink.success();
+                                } else {
+                                    sink.success(pipeline.get());
+                                }
+                            });
+                        }),
+                        error -> keys.forEach(key -> requestsByKey.get(key).forEach(sink -> sink.error(error)))));
+    }
+
+    /**
+     * @return the latest pipeline per key, an empty optional for projects without a pipeline for the ref and no
+     * entry for projects gitlab did not return. Empty if gitlab did not answer.
+     */
+    private Mono<Map<PipelineKey, Optional<PipelineDto>>> query(List<PipelineKey> keys) {
+        var query = new StringBuilder("query(");
+        var fields = new StringBuilder();
+        var variables = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < keys.size(); i++) {
+            var key = keys.get(i);
+            query.append(i == 0 ? "" : ", ").append("$project").append(i).append(": [ID!], $ref").append(i).append(": String");
+            fields.append("k").append(i).append(": projects(ids: $project").append(i).append(") {\n")
+                    .append(PIPELINE_FIELDS.formatted(i, JOBS_PER_STAGE)).append("\n}\n");
+            variables.put("project" + i, List.of("gid://gitlab/Project/" + key.projectId()));
+            variables.put("ref" + i, key.ref());
+        }
+        query.append(") {\n").append(fields).append("}");
+        byte[] requestBody;
+        try {
+            requestBody = mapper.writeValueAsBytes(Map.of("query", query.toString(), "variables", variables));
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+        return restConnection.postGraphql(requestBody).handle((response, sink) -> {
+            try {
+                sink.next(readPipelines(keys, response));
+            } catch (IOException e) {
+                sink.error(e);
+            }
+        });
+    }
+
+    private Map<PipelineKey, Optional<PipelineDto>> readPipelines(List<PipelineKey> keys, JsonNode response) throws IOException {
+        var data = response.path("data");
+        if (data.isMissingNode() || data.isNull()) {
+            throw new IOException("Gitlab graphql query failed: " + response.path("errors"));
+        }
+        var pipelines = new LinkedHashMap<PipelineKey, Optional<PipelineDto>>();
+        var fetchedAt = Instant.now();
+        for (int i = 0; i < keys.size(); i++) {
+            var key = keys.get(i);
+            var project = data.path("k" + i).path("nodes").path(0);
+            if (project.isMissingNode()) continue;
+            var pipelineNode = project.path("pipelines").path("nodes").path(0);
+            if (pipelineNode.isMissingNode()) {
+                pipelines.put(key, Optional.empty());
+                continue;
+            }
+            var pipeline = new PipelineDto(globalId(pipelineNode.path("id")), (int) key.projectId(), status(pipelineNode.path("status")));
+            pipelines.put(key, Optional.of(pipeline));
+            readJobs(project.path("webUrl").asText(), pipeline, pipelineNode)
+                    .ifPresentOrElse(jobs -> batchedJobs.put(pipeline.id(), new BatchedJobs(jobs, fetchedAt)),
+                            () -> batchedJobs.remove(pipeline.id()));
+        }
+        return pipelines;
+    }
+
+    /**
+     * @return the jobs of all stages, empty if a stage has more jobs than the query returned
+     */
+    private Optional<List<PipelineJob>> readJobs(String projectWebUrl, PipelineDto pipeline, JsonNode pipelineNode) throws IOException {
+        var jobs = new ArrayList<PipelineJob>();
+        for (var stageNode : pipelineNode.path("stages").path("nodes")) {
+            var jobsNode = stageNode.path("jobs");
+            if (jobsNode.path("pageInfo").path("hasNextPage").asBoolean()) return Optional.empty();
+            var stage = stageNode.path("name").asText();
+            for (var jobNode : jobsNode.path("nodes")) {
+                int id = globalId(jobNode.path("id"));
+                jobs.add(new PipelineJob(id, stage, status(jobNode.path("status")), jobNode.path("name").asText(), pipeline, projectWebUrl + "/-/jobs/" + id));
+            }
+        }
+        return Optional.of(List.copyOf(jobs));
+    }
+
+    /**
+     * Graphql ids look like {@code gid://gitlab/Ci::Build/42}.
+     */
+    private static int globalId(JsonNode id) throws IOException {
+        var text = id.asText();
+        try {
+            return Integer.parseInt(text.substring(text.lastIndexOf('/') + 1));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected gitlab graphql id " + text, e);
+        }
+    }
+
+    private static GitlabStatus status(JsonNode status) {
+        return GitlabStatus.of(status.asText());
+    }
+
+    private record PendingRequest(PipelineKey key, MonoSink<PipelineDto> sink) {
+    }
+
+    private record BatchedJobs(List<PipelineJob> jobs, Instant fetchedAt) {
+    }
+}
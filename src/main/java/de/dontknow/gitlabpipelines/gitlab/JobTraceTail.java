@@ -0,0 +1,160 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Follows the log of a job. Every poll only requests the bytes appended since the last one and hands complete
+ * lines to the {@link Listener}. Polling stops once the job reached a final status. If the server ignores range
+ * requests, every poll downloads the whole log, so the job is then polled much less often.
+ */
+public class JobTraceTail {
+
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(2);
+    private static final Duration WHOLE_LOG_POLL_INTERVAL = Duration.ofSeconds(30);
+    /**
+     * Of a log that is already long when it is opened, only the end is shown.
+     */
+    private static final int INITIAL_TAIL_BYTES = 512 * 1024;
+    /**
+     * An unfinished line is passed on anyway once it gets this long, e.g. progress output without line breaks.
+     */
+    private static final int MAX_PENDING_BYTES = 64 * 1024;
+    private static final int MAX_RETRIES = 3;
+    /**
+     * Collapsible section markers of the gitlab runner, they are not meant to be displayed.
+     */
+    private static final Pattern SECTION_MARKER = Pattern.compile("section_(?:start|end):\\d+:[^\\r\\n]*\\r\\u001B\\[0K");
+
+    private final GitlabProjectConnection connection;
+    private final long projectId;
+    private final int jobId;
+    private final Listener listener;
+    private final ByteArrayOutputStream pendingLine = new ByteArrayOutputStream();
+    private long offset;
+    private boolean started;
+    private volatile Duration pollInterval = POLL_INTERVAL;
+    private reactor.core.Disposable subscription;
+
+    JobTraceTail(GitlabProjectConnection connection, long projectId, int jobId, Listener listener) {
+        this.connection = connection;
+        this.projectId = projectId;
+        this.jobId = jobId;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts following the log of the given job.
+     *
+     * @return handle to stop following it
+     */
+    public static JobTraceTail start(String gitlabUrl, PipelineJob job, Listener listener) {
+        var tail = new JobTraceTail(PipelinePollingService.getInstance().getConnection(gitlabUrl), job.pipeline().project_id(), job.id(), listener);
+        tail.start();
+        return tail;
+    }
+
+    synchronized void start() {
+        subscription = Mono.defer(this::poll)
+                .repeatWhen(polls -> polls.concatMap(poll -> Mono.delay(pollInterval)))
+                .takeUntil(finished -> finished)
+                .retryWhen(Retry.backoff(MAX_RETRIES, POLL_INTERVAL))
+                .subscribe(finished -> {
+                }, listener::onFailure);
+    }
+
+    public synchronized void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Reads the job status before the log, so the last poll of a finished job sees the complete log.
+     *
+     * @return whether the job finished and polling can stop
+     */
+    private Mono<Boolean> poll() {
+        return connection.getJob(projectId, jobId)
+                .map(job -> Optional.ofNullable(job.status()).filter(status -> !status.isInProgress()))
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(finalStatus -> connection.getTraceChunk(projectId, jobId, offset, INITIAL_TAIL_BYTES)
+                        .doOnNext(this::append)
+                        .then(Mono.fromSupplier(() -> {
+                            if (finalStatus.isEmpty()) return false;
+                            flushPendingLine();
+                            listener.onFinished(finalStatus.get());
+                            return true;
+                        })));
+    }
+
+    private void append(TraceChunk chunk) {
+        if (chunk.rangeIgnored() && pollInterval != WHOLE_LOG_POLL_INTERVAL) {
+            pollInterval = WHOLE_LOG_POLL_INTERVAL;
+            listener.onRangeIgnored(WHOLE_LOG_POLL_INTERVAL);
+        }
+        var bytes = chunk.bytes();
+        int from = 0;
+        if (!started) {
+            started = true;
+            if (chunk.start() > 0) {
+                listener.onSkipped(chunk.start());
+                // the tail starts somewhere within a line
+                while (from < bytes.length && bytes[from] != '\n') from++;
+                from = Math.min(from + 1, bytes.length);
+            }
+        }
+        offset = chunk.end();
+        // a line feed never occurs within a multi-byte utf-8 character or an escape sequence, so complete lines decode safely
+        int lastLineEnd = bytes.length - 1;
+        while (lastLineEnd >= from && bytes[lastLineEnd] != '\n') lastLineEnd--;
+        if (lastLineEnd < from) {
+            pendingLine.write(bytes, from, bytes.length - from);
+            if (pendingLine.size() > MAX_PENDING_BYTES) flushPendingLine();
+            return;
+        }
+        pendingLine.write(bytes, from, lastLineEnd + 1 - from);
+        flushPendingLine();
+        pendingLine.write(bytes, lastLineEnd + 1, bytes.length - lastLineEnd - 1);
+    }
+
+    private void flushPendingLine() {
+        if (pendingLine.size() == 0) return;
+        var text = pendingLine.toString(StandardCharsets.UTF_8);
+        pendingLine.reset();
+        listener.onText(SECTION_MARKER.matcher(text).replaceAll(""));
+    }
+
+    /**
+     * Receives the log of a job, called from a background thread one call at a time.
+     */
+    public interface Listener {
+
+        /**
+         * @param text new complete lines, may contain ansi escape sequences
+         */
+        void onText(String text);
+
+        /**
+         * The log was already long when it was opened, only its end is passed on.
+         */
+        void onSkipped(long skippedBytes);
+
+        /**
+         * The server sends the whole log on every poll, from now on it is only polled every {@code pollInterval}.
+         */
+        void onRangeIgnored(Duration pollInterval);
+
+        void onFinished(GitlabStatus status);
+
+        void onFailure(Throwable error);
+    }
+}
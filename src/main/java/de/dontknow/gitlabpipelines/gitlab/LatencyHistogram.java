@@ -0,0 +1,59 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of durations with power of two microsecond buckets. Percentiles are exact up to a factor of two,
+ * which is plenty to tell a 5ms from a 500ms endpoint.
+ */
+class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    void record(long nanos) {
+        long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+        int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    MetricsSnapshot.Latency snapshot() {
+        var counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long meanMicros = total == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum()) / Math.max(1, count.sum());
+        return new MetricsSnapshot.Latency(total, meanMicros, percentile(counts, total, .5), percentile(counts, total, .99), percentile(counts, total, 1));
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+    }
+
+    /**
+     * @return the upper bound in microseconds of the bucket holding the percentile
+     */
+    private static long percentile(long[] counts, long total, double percentile) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return (1L << (i + 1)) - 1;
+        }
+        return (1L << counts.length) - 1;
+    }
+}
@@ -0,0 +1,38 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * Point in time copy of the {@link GitlabMetrics}, ready to be shown or exported as json.
+ *
+ * @param uptimeSeconds seconds since the metrics were started or reset
+ */
+public record MetricsSnapshot(long uptimeSeconds,
+                              Map<String, Endpoint> endpoints,
+                              Latency ticks,
+                              long polledWatches,
+                              Latency edtUpdates) {
+
+    /**
+     * @param notModified   responses answered from the response cache with {@code 304 Not Modified}
+     * @param failures      requests that failed without a response
+     * @param headerLatency time until the response headers arrived, including failed requests
+     * @param totalLatency  time until the body was read and parsed, of requests with a response
+     */
+    public record Endpoint(long requests, long notModified, long errorResponses, long failures, long bytes,
+                           Latency headerLatency, Latency totalLatency) {
+
+        @JsonProperty
+        public double cacheHitRatio() {
+            return requests == 0 ? 0 : (double) notModified / requests;
+        }
+    }
+
+    /**
+     * All durations in microseconds.
+     */
+    public record Latency(long count, long meanMicros, long p50Micros, long p99Micros, long maxMicros) {
+    }
+}
@@ -0,0 +1,150 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.intellij.openapi.diagnostic.Logger;
+import reactor.core.publisher.Mono;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server sent event stream of the pipeline relay for one {@link PipelineKey}, only events of the key's gitlab
+ * instance are delivered. Reconnects with backoff until it is closed.
+ */
+class PipelineEventStream {
+
+    private static final Logger LOG = Logger.getInstance(PipelineEventStream.class);
+    private static final Duration MIN_RECONNECT_DELAY = Duration.ofSeconds(5);
+    private static final Duration MAX_RECONNECT_DELAY = Duration.ofMinutes(5);
+
+    private final HttpClient httpClient;
+    private final URI eventsUri;
+    private final String relayToken;
+    private final Runnable onChange;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private volatile Duration reconnectDelay = MIN_RECONNECT_DELAY;
+    private volatile Flow.Subscription subscription;
+    private volatile reactor.core.Disposable reconnect;
+
+    /**
+     * @param onChange called for every event and whenever the stream connects or disconnects,
+     *                 a poll is due in all of these cases
+     * @param relayToken the events token of the relay
+     */
+    PipelineEventStream(HttpClient httpClient, String relayUrl, String relayToken, PipelineKey key, Runnable onChange) {
+        this.httpClient = httpClient;
+        this.relayToken = relayToken;
+        this.eventsUri = URI.create(String.format("%s/events?instance=%s&project=%s&ref=%s",
+                relayUrl.replaceFirst("/+$", ""), URLEncoder.encode(key.gitlabUrl(), StandardCharsets.UTF_8),
+                key.projectId(), URLEncoder.encode(key.ref(), StandardCharsets.UTF_8)));
+        this.onChange = onChange;
+    }
+
+    void open() {
+        if (closed) return;
+        var request = HttpRequest.newBuilder(eventsUri)
+                .header("Accept", "text/event-stream")
+                .header("Authorization", "Bearer " + relayToken)
+                .GET()
+                .build();
+        var eventSubscriber = new EventSubscriber();
+        httpClient.sendAsync(request, responseInfo -> {
+                    if (responseInfo.statusCode() != HttpURLConnection.HTTP_OK) return HttpResponse.BodySubscribers.discarding();
+                    return HttpResponse.BodySubscribers.fromLineSubscriber(eventSubscriber);
+                })
+                .whenComplete((response, error) -> {
+                    if (error != null || response.statusCode() != HttpURLConnection.HTTP_OK) {
+                        LOG.debug("Pipeline relay " + eventsUri + " is not reachable", error);
+                        eventSubscriber.ended();
+                    }
+                });
+    }
+
+    /**
+     * Whether events arrive, so polling is only needed as a safety net.
+     */
+    boolean isConnected() {
+        return connected;
+    }
+
+    void close() {
+        closed = true;
+        connected = false;
+        var currentSubscription = subscription;
+        if (currentSubscription != null) {
+            currentSubscription.cancel();
+        }
+        var pendingReconnect = reconnect;
+        if (pendingReconnect != null) {
+            pendingReconnect.dispose();
+        }
+    }
+
+    private void disconnected() {
+        boolean wasConnected = connected;
+        connected = false;
+        if (closed) return;
+        if (wasConnected) {
+            onChange.run();
+        }
+        var delay = reconnectDelay;
+        reconnectDelay = delay.multipliedBy(2).compareTo(MAX_RECONNECT_DELAY) < 0 ? delay.multipliedBy(2) : MAX_RECONNECT_DELAY;
+        reconnect = Mono.delay(delay).subscribe(tick -> open());
+    }
+
+    /**
+     * Subscriber of one connection attempt.
+     */
+    private class EventSubscriber implements Flow.Subscriber<String> {
+
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        @Override
+        public void onSubscribe(Flow.Subscription newSubscription) {
+            subscription = newSubscription;
+            if (closed) {
+                newSubscription.cancel();
+                return;
+            }
+            connected = true;
+            reconnectDelay = MIN_RECONNECT_DELAY;
+            // events may have been missed while there was no connection
+            onChange.run();
+            newSubscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("data:")) {
+                onChange.run();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            ended();
+        }
+
+        @Override
+        public void onComplete() {
+            ended();
+        }
+
+        /**
+         * The attempt may fail through the response future and the subscriber, it is only retried once.
+         */
+        void ended() {
+            if (ended.compareAndSet(false, true)) {
+                disconnected();
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineHistoryEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Append-only binary log of the pipeline history of one {@link PipelineKey}.
+ * <p>
+ * Every changed pipeline is appended as a length prefixed record, the last record of a pipeline id wins.
+ * A record cut off by a crash is dropped when the log is opened. Once the log holds far more records than
+ * history entries are kept, it is rewritten with only the newest ones. A log of another format version starts empty.
+ */
+class PipelineHistoryLog {
+
+    private static final int MAGIC = 0x47504832;
+    private static final int COMPACTION_FACTOR = 4;
+    private static final Comparator<PipelineHistoryEntry> NEWEST_FIRST = Comparator.comparingInt(PipelineHistoryEntry::id).reversed();
+
+    private final Path file;
+    private final int capacity;
+    private final Map<Integer, PipelineHistoryEntry> entries = new HashMap<>();
+    private int recordCount;
+
+    private PipelineHistoryLog(Path file, int capacity) {
+        this.file = file;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Reads the log at the given path, a missing or unreadable log starts empty.
+     *
+     * @param capacity number of pipelines that are kept
+     */
+    static PipelineHistoryLog open(Path file, int capacity) throws IOException {
+        var log = new PipelineHistoryLog(file, capacity);
+        log.load();
+        return log;
+    }
+
+    synchronized List<PipelineHistoryEntry> newest() {
+        return entries.values().stream().sorted(NEWEST_FIRST).limit(capacity).toList();
+    }
+
+    /**
+     * The update time the next sync lists pipelines from: the latest of all kept pipelines, or the earliest of the
+     * finished ones whose jobs were not fetched yet, so they are listed again until their jobs could be read.
+     *
+     * @return {@code null} while the log is empty
+     */
+    synchronized Instant syncCursor() {
+        var kept = entries.values().stream().sorted(NEWEST_FIRST).limit(capacity).toList();
+        var withoutJobs = kept.stream()
+                .filter(entry -> !entry.jobs_fetched() && !entry.status().isInProgress())
+                .map(PipelineHistoryEntry::updated_at)
+                .filter(Objects::nonNull)
+                .min(Comparator.naturalOrder());
+        if (withoutJobs.isPresent()) return withoutJobs.get();
+        return kept.stream()
+                .map(PipelineHistoryEntry::updated_at)
+                .filter(Objects::nonNull)
+                .max(Comparator.naturalOrder())
+                .orElse(null);
+    }
+
+    /**
+     * Whether the given listing entry differs from the stored one, so it has to be fetched and appended.
+     * A finished pipeline whose jobs were not fetched counts as changed until they could be read.
+     */
+    synchronized boolean isChanged(PipelineHistoryEntry listed) {
+        var stored = entries.get(listed.id());
+        if (stored == null) return true;
+        if (stored.status() != listed.status() || !Objects.equals(stored.updated_at(), listed.updated_at())) return true;
+        return !stored.jobs_fetched() && !listed.status().isInProgress();
+    }
+
+    synchronized void append(Collection<PipelineHistoryEntry> changed) throws IOException {
+        if (changed.isEmpty()) return;
+        Files.createDirectories(file.getParent());
+        boolean created = !Files.exists(file) || Files.size(file) == 0;
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+            if (created) {
+                out.writeInt(MAGIC);
+            }
+            for (var entry : changed) {
+                writeRecord(out, entry);
+                entries.put(entry.id(), entry);
+                recordCount++;
+            }
+        }
+        if (recordCount > capacity * COMPACTION_FACTOR) {
+            compact();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) return;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (channel.size() < Integer.BYTES || in.readInt() != MAGIC) {
+                channel.truncate(0);
+                return;
+            }
+            long validLength = Integer.BYTES;
+            while (true) {
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > channel.size() - validLength - Integer.BYTES) break;
+                    var payload = new byte[length];
+                    in.readFully(payload);
+                    readRecord(payload).ifPresent(entry -> entries.put(entry.id(), entry));
+                    recordCount++;
+                    validLength += Integer.BYTES + length;
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+            if (validLength < channel.size()) {
+                channel.truncate(validLength);
+            }
+        }
+        if (recordCount > capacity * COMPACTION_FACTOR) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with the newest entries only and atomically replaces the old one.
+     */
+    private void compact() throws IOException {
+        var kept = newest();
+        var compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted)))) {
+            out.writeInt(MAGIC);
+            for (var entry : kept) {
+                writeRecord(out, entry);
+            }
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        entries.clear();
+        kept.forEach(entry -> entries.put(entry.id(), entry));
+        recordCount = kept.size();
+    }
+
+    private static void writeRecord(DataOutputStream out, PipelineHistoryEntry entry) throws IOException {
+        var bytes = new ByteArrayOutputStream(128);
+        var record = new DataOutputStream(bytes);
+        record.writeInt(entry.id());
+        record.writeUTF(entry.status().name());
+        record.writeLong(toMillis(entry.created_at()));
+        record.writeLong(toMillis(entry.updated_at()));
+        record.writeUTF(entry.web_url() == null ? "" : entry.web_url());
+        record.writeShort(entry.jobs().size());
+        for (var job : entry.jobs()) {
+            record.writeUTF(job.name() == null ? "" : job.name());
+            record.writeUTF(job.stage() == null ? "" : job.stage());
+            record.writeUTF(job.status().name());
+        }
+        record.writeBoolean(entry.jobs_fetched());
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * @return the entry of the record, empty if it uses a status this version does not know
+     */
+    private static Optional<PipelineHistoryEntry> readRecord(byte[] payload) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(payload));
+        try {
+            int id = in.readInt();
+            var status = GitlabStatus.valueOf(in.readUTF());
+            var createdAt = fromMillis(in.readLong());
+            var updatedAt = fromMillis(in.readLong());
+            var webUrl = in.readUTF();
+            int jobCount = in.readUnsignedShort();
+            var jobs = new ArrayList<PipelineHistoryEntry.HistoryJob>(jobCount);
+            for (int i = 0; i < jobCount; i++) {
+                jobs.add(new PipelineHistoryEntry.HistoryJob(in.readUTF(), in.readUTF(), GitlabStatus.valueOf(in.readUTF())));
+            }
+            boolean jobsFetched = in.readBoolean();
+            return Optional.of(new PipelineHistoryEntry(id, status, createdAt, updatedAt, webUrl.isEmpty() ? null : webUrl, List.copyOf(jobs), jobsFetched));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static long toMillis(Instant instant) {
+        return instant == null ? Long.MIN_VALUE : instant.toEpochMilli();
+    }
+
+    private static Instant fromMillis(long millis) {
+        return millis == Long.MIN_VALUE ? null : Instant.ofEpochMilli(millis);
+    }
+}
@@ -0,0 +1,122 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineHistoryEntry;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pipeline history per {@link PipelineKey}, kept in a {@link PipelineHistoryLog} under the IDE system directory.
+ * Opening the history only asks gitlab for pipelines updated since the last sync and only fetches the jobs of
+ * pipelines that changed, everything else comes from the log.
+ */
+public class PipelineHistoryService {
+
+    private static final Logger LOG = Logger.getInstance(PipelineHistoryService.class);
+
+    /**
+     * Number of pipelines shown and kept per ref.
+     */
+    static final int HISTORY_SIZE = 20;
+    private static final int PARALLEL_JOB_FETCHES = 4;
+    /**
+     * {@code updated_after} is exclusive and gitlab timestamps have millisecond precision, so the cursor overlaps
+     * the last sync a little. Pipelines listed again are recognized by id and not fetched twice.
+     */
+    private static final Duration CURSOR_OVERLAP = Duration.ofSeconds(1);
+
+    private final Path directory;
+    private final Map<PipelineKey, PipelineHistoryLog> logs = new ConcurrentHashMap<>();
+    private final SingleFlight<PipelineKey> syncs = new SingleFlight<>();
+
+    public PipelineHistoryService() {
+        this(PathManager.getSystemDir().resolve("gitlab-pipelines").resolve("history"));
+    }
+
+    PipelineHistoryService(Path directory) {
+        this.directory = directory;
+    }
+
+    public static PipelineHistoryService getInstance() {
+        return ApplicationManager.getApplication()
+                .getService(PipelineHistoryService.class);
+    }
+
+    /**
+     * Syncs the history of the key with gitlab.
+     *
+     * @return the newest pipelines first, only the stored ones if gitlab could not be reached
+     */
+    public Mono<List<PipelineHistoryEntry>> getHistory(PipelineKey key) {
+        return syncs.execute(key, () -> Mono.fromCallable(() -> openLog(key))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(log -> sync(key, log)
+                        .onErrorResume(e -> {
+                            LOG.warn("Syncing the pipeline history failed", e);
+                            return Mono.empty();
+                        })
+                        .then(Mono.fromCallable(log::newest))));
+    }
+
+    private Mono<Void> sync(PipelineKey key, PipelineHistoryLog log) {
+        var connection = PipelinePollingService.getInstance().getConnection(key.gitlabUrl());
+        var cursor = log.syncCursor();
+        var updatedAfter = cursor == null ? null : cursor.minus(CURSOR_OVERLAP);
+        return connection.getPipelineHistory(key.projectId(), key.ref(), updatedAfter, HISTORY_SIZE)
+                .flatMapMany(Flux::fromIterable)
+                .filter(entry -> entry.status() != null && log.isChanged(entry))
+                .flatMap(entry -> withJobs(connection, key, entry), PARALLEL_JOB_FETCHES)
+                .collectList()
+                .publishOn(Schedulers.boundedElastic())
+                .handle((changed, sink) -> {
+                    try {
+                        log.append(changed);
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                })
+                .then();
+    }
+
+    /**
+     * Jobs of a running pipeline still change, they are only fetched and stored once it finished.
+     */
+    private static Mono<PipelineHistoryEntry> withJobs(GitlabProjectConnection connection, PipelineKey key, PipelineHistoryEntry entry) {
+        if (entry.status().isInProgress()) return Mono.just(entry);
+        return connection.getJobsFromPipeline(new PipelineDto(entry.id(), (int) key.projectId(), entry.status()))
+                .map(jobs -> entry.withJobs(jobs.stream()
+                        .filter(job -> job.status() != null)
+                        .map(PipelineHistoryService::toHistoryJob)
+                        .toList()))
+                .defaultIfEmpty(entry);
+    }
+
+    private static PipelineHistoryEntry.HistoryJob toHistoryJob(PipelineJob job) {
+        return new PipelineHistoryEntry.HistoryJob(job.name(), job.stage(), job.status());
+    }
+
+    private PipelineHistoryLog openLog(PipelineKey key) throws IOException {
+        var log = logs.get(key);
+        if (log != null) return log;
+        var file = directory.resolve(URLEncoder.encode(key.gitlabUrl(), StandardCharsets.UTF_8))
+                .resolve(String.valueOf(key.projectId()))
+                .resolve(URLEncoder.encode(key.ref(), StandardCharsets.UTF_8) + ".log");
+        log = PipelineHistoryLog.open(file, HISTORY_SIZE);
+        var previous = logs.putIfAbsent(key, log);
+        return previous == null ? log : previous;
+    }
+}
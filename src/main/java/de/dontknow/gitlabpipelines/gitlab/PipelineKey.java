@@ -0,0 +1,9 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+/**
+ * Identifies the pipelines of one ref in one gitlab project.
+ *
+ * @param gitlabUrl the normalized url of the gitlab instance hosting the project, project ids are only unique per instance
+ */
+public record PipelineKey(String gitlabUrl, long projectId, String ref) {
+}
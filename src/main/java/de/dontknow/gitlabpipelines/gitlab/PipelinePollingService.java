@@ -0,0 +1,213 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import de.dontknow.gitlabpipelines.config.GitlabConnectionStorage;
+import de.dontknow.gitlabpipelines.config.PipelineCacheStorage;
+import git4idea.repo.GitRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Application wide poller. Owns one {@link GitlabProjectConnection} per configured gitlab instance and polls every
+ * subscribed {@link PipelineKey} once, no matter how many project windows are watching it.
+ * If a pipeline relay is configured for an instance, pushed events wake its watches up and their polling slows down
+ * to a safety net.
+ */
+public class PipelinePollingService implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(PipelinePollingService.class);
+    private static final Duration TICK = Duration.ofSeconds(1);
+
+    private final Map<String, GitlabInstance> instances = new ConcurrentHashMap<>();
+    /**
+     * Probes credentials that are not configured yet, e.g. while they are typed into the settings.
+     */
+    private final GitlabProjectConnection probeConnection = new GitlabProjectConnection("");
+    private final Map<PipelineKey, PipelineWatch> watches = new ConcurrentHashMap<>();
+    private final List<Runnable> instancesListeners = new CopyOnWriteArrayList<>();
+    private final reactor.core.Disposable ticker;
+
+    public PipelinePollingService() {
+        ticker = Flux.interval(TICK)
+                .subscribe(tick -> pollDueWatches());
+    }
+
+    public static PipelinePollingService getInstance() {
+        return ApplicationManager.getApplication()
+                .getService(PipelinePollingService.class);
+    }
+
+    /**
+     * @param gitlabUrl the normalized url of a configured instance
+     * @return the connection of the instance, for an instance that is not configured (anymore) one that answers nothing
+     */
+    public GitlabProjectConnection getConnection(String gitlabUrl) {
+        return instanceOf(gitlabUrl).map(GitlabInstance::connection).orElse(probeConnection);
+    }
+
+    /**
+     * @return the normalized url of the configured instance the repository's remote is hosted on
+     */
+    public Optional<String> getGitlabUrl(GitRepository repository) {
+        var configStorage = GitlabConnectionStorage.getInstance();
+        if (configStorage == null || configStorage.getState() == null) return Optional.empty();
+        return GitlabProjectConnection.getRemoteUrl(repository)
+                .map(GitlabProjectConnection::extractHost)
+                .flatMap(configStorage::findInstance)
+                .map(instance -> GitlabConnectionStorage.normalizeUrl(instance.gitlabUrl));
+    }
+
+    public Mono<Boolean> isValid(String gitlabUrl, String accesToken) {
+        var configured = instances.get(GitlabConnectionStorage.normalizeUrl(gitlabUrl));
+        return (configured == null ? probeConnection : configured.connection()).isValid(gitlabUrl, accesToken);
+    }
+
+    /**
+     * Shuts down the connections and stops the watches of instances that were removed from the settings,
+     * then tells the listeners, so repositories on added or removed instances are watched or dropped.
+     */
+    public void updateInstances() {
+        instances.forEach((gitlabUrl, instance) -> {
+            if (!isConfigured(gitlabUrl) && instances.remove(gitlabUrl, instance)) {
+                instance.connection().close();
+            }
+        });
+        watches.keySet().stream()
+                .filter(key -> !isConfigured(key.gitlabUrl()))
+                .toList()
+                .forEach(key -> Optional.ofNullable(watches.remove(key)).ifPresent(PipelineWatch::close));
+        instancesListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Runs the listener whenever instances were added to or removed from the settings.
+     *
+     * @return handle that removes the listener
+     */
+    public reactor.core.Disposable addInstancesListener(Runnable listener) {
+        instancesListeners.add(listener);
+        return () -> instancesListeners.remove(listener);
+    }
+
+    /**
+     * Creates the connection of a configured instance on first use, instances that are not configured get none.
+     */
+    private Optional<GitlabInstance> instanceOf(String gitlabUrl) {
+        return Optional.ofNullable(instances.compute(gitlabUrl, (url, instance) -> {
+            if (instance != null || !isConfigured(url)) return instance;
+            var connection = new GitlabProjectConnection(url);
+            return new GitlabInstance(connection, new GraphqlPipelineTransport(connection));
+        }));
+    }
+
+    private static boolean isConfigured(String gitlabUrl) {
+        var configStorage = GitlabConnectionStorage.getInstance();
+        return configStorage != null && configStorage.getState() != null && configStorage.getPrivateToken(gitlabUrl) != null;
+    }
+
+    /**
+     * Starts delivering {@link PipelineState}s of the given key to the subscriber.
+     *
+     * @return handle that ends the subscription
+     */
+    public reactor.core.Disposable subscribe(PipelineKey key, PipelineSubscriber subscriber) {
+        watches.compute(key, (pipelineKey, watch) -> {
+            var pipelineWatch = watch;
+            if (pipelineWatch == null) {
+                pipelineWatch = new PipelineWatch(pipelineKey, PipelineCacheStorage.getInstance());
+                pipelineWatch.listenTo(createEventStream(pipelineKey, pipelineWatch));
+            }
+            pipelineWatch.addSubscriber(subscriber);
+            return pipelineWatch;
+        });
+        return () -> watches.computeIfPresent(key, (pipelineKey, watch) -> {
+            if (!watch.removeSubscriber(subscriber)) return watch;
+            watch.close();
+            return null;
+        });
+    }
+
+    /**
+     * Reconnects all watches to the pipeline relays currently configured for their instances.
+     */
+    public void updateRelay() {
+        watches.forEach((key, watch) -> watch.listenTo(createEventStream(key, watch)));
+    }
+
+    /**
+     * Resets the backoff of the given key and polls it with the next tick.
+     */
+    public void wakeUp(PipelineKey key) {
+        var watch = watches.get(key);
+        if (watch != null) {
+            watch.wakeUp();
+        }
+    }
+
+    private void pollDueWatches() {
+        var now = Instant.now();
+        var dueWatches = watches.values().stream()
+                .filter(watch -> watch.isDue(now))
+                .toList();
+        if (dueWatches.isEmpty()) return;
+        var useGraphql = isUseGraphql();
+        long start = System.nanoTime();
+        Flux.fromIterable(dueWatches)
+                .flatMap(watch -> getTransport(watch.key().gitlabUrl(), useGraphql)
+                        .map(transport -> watch.poll(transport)
+                                .doOnError(e -> LOG.warn("Polling gitlab pipeline failed", e))
+                                .onErrorResume(e -> Mono.empty()))
+                        .orElseGet(Mono::empty))
+                .doFinally(signal -> GitlabMetrics.getInstance().recordTick(System.nanoTime() - start, dueWatches.size()))
+                .subscribe();
+    }
+
+    /**
+     * The graphql transport fetches all due watches of an instance with one query, the rest api needs several requests per watch.
+     */
+    private Optional<PipelineTransport> getTransport(String gitlabUrl, boolean useGraphql) {
+        return instanceOf(gitlabUrl).map(instance -> useGraphql ? instance.graphqlTransport() : instance.connection());
+    }
+
+    private static boolean isUseGraphql() {
+        var configStorage = GitlabConnectionStorage.getInstance();
+        return configStorage != null && configStorage.getState() != null && configStorage.getState().useGraphql;
+    }
+
+    /**
+     * Only the relay configured for the instance of the key pushes its events, watches of other instances keep polling.
+     */
+    private PipelineEventStream createEventStream(PipelineKey key, PipelineWatch watch) {
+        var configStorage = GitlabConnectionStorage.getInstance();
+        if (configStorage == null || configStorage.getState() == null) return null;
+        return configStorage.getInstance(key.gitlabUrl())
+                .filter(GitlabConnectionStorage.GitlabInstanceState::hasRelay)
+                .map(instance -> new PipelineEventStream(GitlabHttpClient.shared(), instance.relayUrl.trim(),
+                        instance.relayToken == null ? "" : instance.relayToken.trim(), key, watch::wakeUp))
+                .orElse(null);
+    }
+
+    private record GitlabInstance(GitlabProjectConnection connection, GraphqlPipelineTransport graphqlTransport) {
+    }
+
+    @Override
+    public void dispose() {
+        ticker.dispose();
+        watches.values().forEach(PipelineWatch::close);
+        watches.clear();
+        instancesListeners.clear();
+        instances.values().forEach(instance -> instance.connection().close());
+        instances.clear();
+        probeConnection.close();
+    }
+}
@@ -0,0 +1,42 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.DownstreamPipeline;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable view model of a pipeline with its jobs grouped into stages in pipeline order.
+ *
+ * @param gitlabUrl  the instance the pipeline runs on, further requests about it go there
+ * @param downstream the pipelines triggered by bridge jobs of the stages, by bridge job id
+ * @param stale      whether the pipeline is the last known state from the cache
+ */
+public record PipelineSnapshot(String gitlabUrl, PipelineDto pipeline, List<StageSnapshot> stages, Map<Integer, DownstreamPipeline> downstream, boolean stale) {
+
+    public static PipelineSnapshot of(String gitlabUrl, PipelineState state) {
+        return new PipelineSnapshot(gitlabUrl, state.pipeline(), stagesOf(state.jobs()), state.downstream(), state.stale());
+    }
+
+    /**
+     * Groups jobs into stages in the order the stages first occur.
+     */
+    public static List<StageSnapshot> stagesOf(List<PipelineJob> jobs) {
+        var jobsByStage = jobs.stream()
+                .collect(Collectors.groupingBy(PipelineJob::stage, LinkedHashMap::new, Collectors.toList()));
+        return jobsByStage.entrySet().stream()
+                .map(stage -> new StageSnapshot(stage.getKey(), GitlabStatus.aggregate(stage.getValue().stream().map(PipelineJob::status).toList()), List.copyOf(stage.getValue())))
+                .toList();
+    }
+
+    /**
+     * @param status the combined status of the stage's jobs, {@code null} if there is none
+     */
+    public record StageSnapshot(String name, GitlabStatus status, List<PipelineJob> jobs) {
+    }
+}
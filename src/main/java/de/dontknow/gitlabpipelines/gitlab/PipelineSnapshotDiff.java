@@ -0,0 +1,45 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Changes between two {@link PipelineSnapshot}s, so the view only has to touch what changed.
+ * Only the stages are drawn, the jobs are read from the latest snapshot when a stage popup opens.
+ *
+ * @param structureChanged whether another pipeline is shown, stages were added, removed or renamed or the staleness
+ *                         changed, which requires a full rebuild
+ */
+public record PipelineSnapshotDiff(PipelineSnapshot snapshot,
+                                   boolean structureChanged,
+                                   List<PipelineSnapshot.StageSnapshot> changedStages) {
+
+    public static PipelineSnapshotDiff between(PipelineSnapshot previous, PipelineSnapshot current) {
+        if (previous == null || !sameStructure(previous, current)) {
+            return new PipelineSnapshotDiff(current, true, current.stages());
+        }
+        var changedStages = new ArrayList<PipelineSnapshot.StageSnapshot>();
+        for (int i = 0; i < current.stages().size(); i++) {
+            if (previous.stages().get(i).status() != current.stages().get(i).status()) {
+                changedStages.add(current.stages().get(i));
+            }
+        }
+        return new PipelineSnapshotDiff(current, false, List.copyOf(changedStages));
+    }
+
+    public boolean isEmpty() {
+        return !structureChanged && changedStages.isEmpty();
+    }
+
+    private static boolean sameStructure(PipelineSnapshot previous, PipelineSnapshot current) {
+        // the staleness marker is drawn on every stage, leaving or entering it redraws the whole pipeline
+        if (previous.stale() != current.stale()) return false;
+        if (!Objects.equals(previous.gitlabUrl(), current.gitlabUrl()) || previous.pipeline().id() != current.pipeline().id()) return false;
+        if (previous.stages().size() != current.stages().size()) return false;
+        for (int i = 0; i < current.stages().size(); i++) {
+            if (!previous.stages().get(i).name().equals(current.stages().get(i).name())) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,42 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.DownstreamPipeline;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latest pipeline of a {@link PipelineKey} together with its jobs.
+ *
+ * @param pipeline   the newest pipeline, {@code null} if there is none or it could not be fetched
+ * @param jobs       the jobs of the pipeline including its bridges, which carry the status of their downstream pipelines
+ * @param downstream the pipelines triggered by the bridges, by bridge job id
+ * @param stale      whether the state was restored from the cache and not yet confirmed by gitlab
+ */
+public record PipelineState(PipelineDto pipeline, List<PipelineJob> jobs, Map<Integer, DownstreamPipeline> downstream, boolean stale) {
+
+    static final PipelineState EMPTY = new PipelineState(null, List.of(), Map.of(), false);
+
+    public PipelineState {
+        // states cached by older versions have no downstream pipelines
+        downstream = downstream == null ? Map.of() : downstream;
+    }
+
+    /**
+     * The status the polling interval is based on, running while a downstream pipeline still is.
+     *
+     * @return {@code null} if there is no pipeline
+     */
+    GitlabStatus pollingStatus() {
+        if (pipeline == null) return null;
+        if (hasUnfinishedDownstream() && !pipeline.status().isInProgress()) return GitlabStatus.running;
+        return pipeline.status();
+    }
+
+    boolean hasUnfinishedDownstream() {
+        return downstream.values().stream().anyMatch(child -> !child.isFinished());
+    }
+}
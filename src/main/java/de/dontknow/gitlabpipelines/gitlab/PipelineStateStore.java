@@ -0,0 +1,134 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.DownstreamPipeline;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Concurrent store of the current pipeline of a {@link PipelineKey}.
+ * <p>
+ * Writers take a sequence number from {@link #beginFetch()} before they send their request. A job entry is only
+ * replaced by a result of the same or a later fetch, so a slow response can never overwrite a newer one.
+ * Readers only ever see complete {@link PipelineState}s published with {@link #publish()}.
+ */
+class PipelineStateStore {
+
+    private static final Comparator<PipelineJob> NEWEST_FIRST = Comparator.comparingInt(PipelineJob::id).reversed();
+
+    private final AtomicLong fetchSequence = new AtomicLong();
+    private final AtomicReference<PipelineEntry> pipeline = new AtomicReference<>();
+    private final Map<Integer, JobEntry> jobs = new ConcurrentHashMap<>();
+    private final AtomicReference<DownstreamEntry> downstream = new AtomicReference<>();
+    private final AtomicReference<PipelineState> published = new AtomicReference<>();
+
+    long beginFetch() {
+        return fetchSequence.incrementAndGet();
+    }
+
+    /**
+     * Switches to the given pipeline. Jobs of a previous pipeline are dropped.
+     */
+    void updatePipeline(PipelineDto pipelineDto, long sequence) {
+        var updated = pipeline.accumulateAndGet(new PipelineEntry(pipelineDto, sequence),
+                (current, candidate) -> current == null || current.sequence() <= candidate.sequence() ? candidate : current);
+        if (updated.sequence() == sequence) {
+            jobs.values().removeIf(entry -> entry.job().pipeline() == null || entry.job().pipeline().id() != pipelineDto.id());
+        }
+    }
+
+    /**
+     * Replaces the jobs with the ones of a job listing. Jobs missing from it, e.g. the earlier attempts of retried
+     * jobs that gitlab lists under a new id, are dropped unless a later fetch wrote them.
+     */
+    void updateJobs(Collection<PipelineJob> listedJobs, long sequence) {
+        listedJobs.forEach(job -> updateJob(job, sequence));
+        var listedIds = listedJobs.stream().map(PipelineJob::id).collect(Collectors.toSet());
+        jobs.entrySet().removeIf(entry -> entry.getValue().sequence() < sequence && !listedIds.contains(entry.getKey()));
+    }
+
+    private void updateJob(PipelineJob job, long sequence) {
+        jobs.merge(job.id(), new JobEntry(job, sequence),
+                (current, candidate) -> current.sequence() <= candidate.sequence() ? candidate : current);
+    }
+
+    /**
+     * Remembers the downstream pipelines triggered by the bridges of the pipeline.
+     */
+    void updateDownstream(PipelineDto pipelineDto, Map<Integer, DownstreamPipeline> resolved, long sequence) {
+        downstream.accumulateAndGet(new DownstreamEntry(pipelineDto.id(), resolved, sequence),
+                (current, candidate) -> current == null || current.sequence() <= candidate.sequence() ? candidate : current);
+    }
+
+    void clear() {
+        pipeline.set(null);
+        jobs.clear();
+        downstream.set(null);
+        published.set(PipelineState.EMPTY);
+    }
+
+    /**
+     * Atomically replaces the published state with the current content of the store.
+     */
+    PipelineState publish() {
+        var pipelineEntry = pipeline.get();
+        if (pipelineEntry == null) {
+            published.set(PipelineState.EMPTY);
+            return PipelineState.EMPTY;
+        }
+        var pipelineJobs = jobs.values().stream()
+                .map(JobEntry::job)
+                .sorted(NEWEST_FIRST)
+                .toList();
+        var downstreamEntry = downstream.get();
+        var pipelineDownstream = downstreamEntry == null || downstreamEntry.pipelineId() != pipelineEntry.pipeline().id()
+                ? Map.<Integer, DownstreamPipeline>of()
+                : downstreamEntry.downstream();
+        var state = new PipelineState(pipelineEntry.pipeline(), pipelineJobs, pipelineDownstream, false);
+        published.set(state);
+        return state;
+    }
+
+    /**
+     * Republishes the current pipeline as stale after a failed fetch, it stays shown until gitlab answers again.
+     *
+     * @return the stale state, {@code null} if there is no pipeline or it already was stale
+     */
+    PipelineState markStale() {
+        var previous = published.getAndUpdate(current -> current == null || current.pipeline() == null || current.stale()
+                ? current
+                : new PipelineState(current.pipeline(), current.jobs(), current.downstream(), true));
+        if (previous == null || previous.pipeline() == null || previous.stale()) return null;
+        return published.get();
+    }
+
+    /**
+     * Publishes a state restored from the cache until the first fetch publishes a fresh one.
+     */
+    void restore(PipelineState state) {
+        published.compareAndSet(null, state);
+    }
+
+    /**
+     * Lock free read of the last published state, {@code null} before the first publication.
+     */
+    PipelineState current() {
+        return published.get();
+    }
+
+    private record PipelineEntry(PipelineDto pipeline, long sequence) {
+    }
+
+    private record JobEntry(PipelineJob job, long sequence) {
+    }
+
+    private record DownstreamEntry(int pipelineId, Map<Integer, DownstreamPipeline> downstream, long sequence) {
+    }
+}
@@ -1,225 +1,333 @@
 package de.dontknow.gitlabpipelines.gitlab;
 
-import com.intellij.ide.DataManager;
+import com.intellij.dvcs.repo.VcsRepositoryManager;
+import com.intellij.dvcs.repo.VcsRepositoryMappingListener;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.ui.popup.JBPopupFactory;
-import com.intellij.openapi.util.IconLoader;
-import com.intellij.util.IconUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.wm.WindowManager;
+import com.intellij.util.messages.MessageBusConnection;
+import de.dontknow.gitlabpipelines.config.PipelineCacheStorage;
 import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
-import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
-import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
 import de.dontknow.gitlabpipelines.gitlab.dto.ProjectDto;
-import de.dontknow.gitlabpipelines.widget.JobDisplayAction;
-import de.dontknow.gitlabpipelines.widget.JobGroupDropDown;
+import de.dontknow.gitlabpipelines.widget.PipelineStatusView;
 import git4idea.GitReference;
 import git4idea.repo.GitRepository;
 import git4idea.repo.GitRepositoryChangeListener;
 import git4idea.repo.GitRepositoryManager;
-import reactor.core.publisher.Flux;
+import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
-import java.io.IOException;
-import java.net.URISyntaxException;
-import java.time.Duration;
-import java.time.temporal.ChronoUnit;
-import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
 
+/**
+ * Watches every git repository of a project. The repository of the selected editor is shown in full,
+ * the pipelines of all other repositories are polled less often and shown as one combined status.
+ */
 public class PipelineStatusDisplay {
 
-    private final HashMap<String, StagePanelDto> displayedStages = new HashMap<>();
-    private final HashMap<Integer, JobPanelActionDto> displayedActionJobs = new HashMap<>();
-    private final HashSet<PipelineDto> pipelines = new HashSet<>();
-    private ProjectDto projectDto;
-    private GitRepository currentGitRepository;
-    private boolean pipelineCompleted;
+    private static final Logger LOG = Logger.getInstance(PipelineStatusDisplay.class);
 
-    private boolean isRunning = true;
-    private final GitlabProjectConnection gitlabProjectConnection;
+    private final Map<GitRepository, RepositoryWatcher> watchers = new ConcurrentHashMap<>();
+    private final AtomicReference<PipelineSnapshot> displayedSnapshot = new AtomicReference<>();
+    private volatile GitRepository activeRepository;
 
-    public PipelineStatusDisplay(GitlabProjectConnection gitlabProjectConnection) {
-        this.gitlabProjectConnection = gitlabProjectConnection;
+    private volatile boolean isRunning = true;
+    private volatile boolean frameActive = true;
+    private Project project;
+    private PipelineStatusView view;
+    private MessageBusConnection messageBusConnection;
+    private reactor.core.Disposable instancesListener;
+    private JFrame projectFrame;
+    private final WindowAdapter frameFocusListener = new WindowAdapter() {
+        @Override
+        public void windowActivated(WindowEvent e) {
+            frameActive = true;
+            watchers.values().forEach(RepositoryWatcher::refresh);
+        }
+
+        @Override
+        public void windowDeactivated(WindowEvent e) {
+            frameActive = false;
+        }
+    };
+    private final PipelinePollingService pollingService;
+
+    public PipelineStatusDisplay(PipelinePollingService pollingService) {
+        this.pollingService = pollingService;
     }
 
     public void startWatcher(Project project, JPanel rootPanel) {
-        var connection = project.getMessageBus().connect();
-        AtomicReference<String> lastBranch = new AtomicReference<>("");
-        connection.subscribe(GitRepository.GIT_REPO_CHANGE, (GitRepositoryChangeListener) repository -> {
-            if (repository.getCurrentBranch() != null && !repository.getCurrentBranch().getName().equals(lastBranch.get())) {
-                displayLoading(rootPanel);
-                lastBranch.set(repository.getCurrentBranch().getName());
+        this.project = project;
+        this.view = new PipelineStatusView(project, rootPanel, displayedSnapshot::get, this::showHistory);
+        messageBusConnection = project.getMessageBus().connect();
+        messageBusConnection.subscribe(GitRepository.GIT_REPO_CHANGE, (GitRepositoryChangeListener) repository -> {
+            var watcher = watchers.get(repository);
+            if (watcher != null) {
+                watcher.refresh();
             }
         });
-
-
-        Flux.interval(Duration.of(1, ChronoUnit.SECONDS))
-                .handle((aLong, synchronousSink) -> {
-                    if (projectDto == null && currentGitRepository == null) {
-                        updateProjectDtoAndGitRepo(project);
-                    } else {
-                        if (!pipelineCompleted) {
-                            updateJobStates();
-                        }
-                        updateActivePipeline(rootPanel);
-                    }
-                }).takeUntil(o -> !isRunning)
-                .subscribe();
+        messageBusConnection.subscribe(VcsRepositoryManager.VCS_REPOSITORY_MAPPING_UPDATED, (VcsRepositoryMappingListener) this::syncRepositories);
+        messageBusConnection.subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, new FileEditorManagerListener() {
+            @Override
+            public void selectionChanged(@NotNull FileEditorManagerEvent event) {
+                selectRepositoryOf(event.getNewFile());
+            }
+        });
+        instancesListener = pollingService.addInstancesListener(() -> watchers.values().forEach(RepositoryWatcher::refresh));
+        watchFrameFocus(project);
+        syncRepositories();
+        Arrays.stream(FileEditorManager.getInstance(project).getSelectedFiles()).findFirst().ifPresent(this::selectRepositoryOf);
     }
 
     public void dispose() {
         isRunning = false;
+        if (projectFrame != null) {
+            projectFrame.removeWindowListener(frameFocusListener);
+        }
+        if (messageBusConnection != null) {
+            messageBusConnection.disconnect();
+        }
+        if (instancesListener != null) {
+            instancesListener.dispose();
+        }
+        watchers.values().forEach(RepositoryWatcher::dispose);
+        watchers.clear();
     }
 
-    private void updateProjectDtoAndGitRepo(Project project) {
-        var gitRepo = getGitRepo(project);
-        if (gitRepo.isPresent()) {
-            var gitRepository = gitRepo.get();
-            try {
-                projectDto = gitlabProjectConnection.getProject(gitRepository);
-            } catch (URISyntaxException | IOException e) {
-                throw new RuntimeException(e);
-            }
-            currentGitRepository = gitRepository;
+    /**
+     * Starts a watcher for every new repository of the project and stops the ones of removed repositories.
+     */
+    private void syncRepositories() {
+        if (!isRunning) return;
+        var repositories = GitRepositoryManager.getInstance(project).getRepositories();
+        watchers.keySet().stream()
+                .filter(repository -> !repositories.contains(repository))
+                .toList()
+                .forEach(repository -> watchers.remove(repository).dispose());
+        repositories.forEach(repository -> watchers.computeIfAbsent(repository, RepositoryWatcher::new).refresh());
+        if (activeRepository == null || !repositories.contains(activeRepository)) {
+            setActiveRepository(repositories.isEmpty() ? null : repositories.get(0));
         }
     }
 
+    private void selectRepositoryOf(VirtualFile file) {
+        if (file == null) return;
+        var repository = GitRepositoryManager.getInstance(project).getRepositoryForFileQuick(file);
+        if (repository != null && repository != activeRepository) {
+            setActiveRepository(repository);
+        }
+    }
 
-    private void updateActivePipeline(JPanel root) {
-        try {
-            if (gitlabProjectConnection.isValid()) {
-                PipelineDto master = gitlabProjectConnection.getLatestPipeline(projectDto, Optional.of(currentGitRepository).map(GitRepository::getCurrentBranch).map(GitReference::getName).orElse("master"));
-                if (master != null) {
-                    pipelineCompleted = master.status() == GitlabStatus.failed || master.status() == GitlabStatus.success;
-                    if (!pipelines.contains(master)) {
-                        pipelines.clear();
-                        pipelines.add(master);
-                        updatePipelineStatus(root, master);
-                    }
-                }
+    private void setActiveRepository(GitRepository repository) {
+        var previous = activeRepository;
+        activeRepository = repository;
+        var watcher = repository == null ? null : watchers.get(repository);
+        var snapshot = watcher == null ? null : watcher.latestSnapshot.get();
+        displayedSnapshot.set(snapshot);
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (!isRunning) return;
+            if (snapshot == null) {
+                view.showLoading();
             } else {
-                pipelines.clear();
-                displayedStages.clear();
+                applyToView(PipelineSnapshotDiff.between(null, snapshot));
             }
-        } catch (URISyntaxException | IOException e) {
-            throw new RuntimeException(e);
-        }
-
+        }, ModalityState.any());
+        // both change their polling priority
+        Optional.ofNullable(previous).map(watchers::get).ifPresent(RepositoryWatcher::refresh);
+        Optional.ofNullable(watcher).ifPresent(RepositoryWatcher::refresh);
+        updateSummary();
     }
 
-    private void updatePipelineStatus(JPanel root, PipelineDto pipelineDto) {
-        try {
-            List<PipelineJob> jobsFromPipeline = gitlabProjectConnection.getJobsFromPipeline(pipelineDto);
-            if (jobsFromPipeline == null) return;
-            root.removeAll();
-            displayedStages.clear();
-            var jobsByStage = jobsFromPipeline.stream().collect(Collectors.groupingBy(PipelineJob::stage, LinkedHashMap::new, Collectors.toList()));
-            AtomicBoolean isFirst = new AtomicBoolean(false);
-
-            jobsByStage.forEach((stage, jobs) -> {
-                if (!isFirst.get()) {
-                    isFirst.set(true);
-                } else {
-                    var icon = IconLoader.getIcon("Icons/arrow-left.svg", getClass());
-                    root.add(new JLabel(IconUtil.scale(icon, root, .8f)));
-                }
-
-                var stageLabelDisplay = new JLabel();
-                var jobGroupDropDown = new JobGroupDropDown(jobs.stream().map(pipelineJob -> {
-                    var jobDisplayAction = new JobDisplayAction(pipelineJob);
-                    displayedActionJobs.put(pipelineJob.id(), new JobPanelActionDto(jobDisplayAction, pipelineJob));
-                    return jobDisplayAction;
-                }).toList());
-                stageLabelDisplay.addMouseListener(new MouseAdapter() {
-                    @Override
-                    public void mouseClicked(MouseEvent e) {
-                        openPopup(e, jobGroupDropDown, stage);
-                    }
-                });
-                displayedStages.put(stage, new StagePanelDto(stageLabelDisplay, jobs));
-                stageLabelDisplay.setToolTipText(stage);
-                root.add(stageLabelDisplay);
-            });
-            updateJobStates();
-
-        } catch (URISyntaxException |
-                 IOException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Diffs the new snapshot against the displayed one off the EDT and applies only the changes in one batch on the EDT.
+     */
+    private void display(PipelineSnapshot snapshot) {
+        var diff = PipelineSnapshotDiff.between(displayedSnapshot.getAndSet(snapshot), snapshot);
+        if (diff.isEmpty()) return;
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (isRunning) applyToView(diff);
+        }, ModalityState.any());
     }
 
-    private static void openPopup(MouseEvent e, JobGroupDropDown jobGroupDropDown, String stage) {
-        var dataContext = DataManager.getInstance().getDataContext(e.getComponent());
-        var popup = JBPopupFactory.getInstance().createActionGroupPopup(stage, jobGroupDropDown, dataContext, JBPopupFactory.ActionSelectionAid.SPEEDSEARCH, true);
-        popup.showInBestPositionFor(dataContext);
+    private void applyToView(PipelineSnapshotDiff diff) {
+        long start = System.nanoTime();
+        view.apply(diff);
+        GitlabMetrics.getInstance().recordEdtUpdate(System.nanoTime() - start);
     }
 
-
-    private static void displayLoading(JPanel root) {
-        root.removeAll();
-        root.add(new JLabel("fetching..."));
+    /**
+     * Syncs the history of the displayed pipeline and shows it once it is up to date.
+     */
+    private void showHistory() {
+        var watcher = activeRepository == null ? null : watchers.get(activeRepository);
+        var key = watcher == null ? null : watcher.subscribedKey;
+        if (key == null) return;
+        PipelineHistoryService.getInstance().getHistory(key)
+                .subscribe(entries -> ApplicationManager.getApplication().invokeLater(() -> {
+                    if (isRunning) view.showHistory(key.ref(), entries);
+                }, ModalityState.any()), e -> LOG.warn("Loading the pipeline history failed", e));
     }
 
-    private void updateJobStates() {
-        List<StagePanelDto> displayLabelJobs = new ArrayList<>(displayedStages.values());
-        var updatedPipelineJob = new HashMap<Integer, PipelineJob>();
-
-        displayLabelJobs.parallelStream().forEach(stagePanelDto -> {
-            var stageStatuses = stagePanelDto.stageJobs.parallelStream()
-                    .map(job -> gitlabProjectConnection.getJob(job.pipeline().project_id(), job.id()))
-                    .filter(Objects::nonNull)
-                    .peek(pipelineJob -> updatedPipelineJob.put(pipelineJob.id(), pipelineJob))
-                    .map(PipelineJob::status)
-                    .toList();
-            if (stageStatuses.stream().anyMatch(status -> status == GitlabStatus.failed)) {
-                stagePanelDto.label.setIcon(GitlabStatus.failed.getIcon());
-            } else if (stageStatuses.stream().anyMatch(status -> status == GitlabStatus.running)) {
-                stagePanelDto.label.setIcon(GitlabStatus.running.getIcon());
-            } else if (stageStatuses.stream().anyMatch(status -> status == GitlabStatus.pending)) {
-                stagePanelDto.label.setIcon(GitlabStatus.pending.getIcon());
-            } else if (stageStatuses.stream().anyMatch(status -> status == GitlabStatus.manual)) {
-                stagePanelDto.label.setIcon(GitlabStatus.manual.getIcon());
-            } else if (stageStatuses.stream().allMatch(status -> status == GitlabStatus.created)) {
-                stagePanelDto.label.setIcon(GitlabStatus.created.getIcon());
-            } else if (stageStatuses.stream().allMatch(status -> status == GitlabStatus.success)) {
-                stagePanelDto.label.setIcon(GitlabStatus.success.getIcon());
-            }
-        });
+    private void displayLoading() {
+        displayedSnapshot.set(null);
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (isRunning) view.showLoading();
+        }, ModalityState.any());
+    }
 
-        List<JobPanelActionDto> displayActionJobs = new ArrayList<>(displayedActionJobs.values());
-        displayActionJobs.parallelStream().forEach(pipelineJob -> {
-            var job = updatedPipelineJob.get(pipelineJob.pipelineJob.id());
-            if (job == null) return;
-            pipelineJob.jobDisplayAction.getTemplatePresentation().setIcon(job.status().getIcon());
-            pipelineJob.jobDisplayAction.getTemplatePresentation().setText(job.name());
-        });
+    private void updateSummary() {
+        var others = watchers.values().stream()
+                .filter(watcher -> watcher.repository != activeRepository)
+                .filter(watcher -> watcher.latestSnapshot.get() != null)
+                .toList();
+        var status = GitlabStatus.aggregate(others.stream().map(watcher -> watcher.latestSnapshot.get().pipeline().status()).toList());
+        var summaryStatus = others.isEmpty() ? null : Objects.requireNonNullElse(status, GitlabStatus.success);
+        var tooltip = others.stream()
+                .map(watcher -> watcher.repository.getRoot().getName() + " (" + watcher.branch() + "): " + watcher.latestSnapshot.get().pipeline().status())
+                .sorted()
+                .toList();
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (isRunning) view.showSummary(summaryStatus, tooltip);
+        }, ModalityState.any());
     }
 
-    private void updateLabel(JLabel label, PipelineJob job) {
-        label.setIcon(job.status().getIcon());
-        label.setToolTipText(job.name());
-        label.revalidate();
-        label.repaint();
+    private void watchFrameFocus(Project project) {
+        projectFrame = WindowManager.getInstance().getFrame(project);
+        if (projectFrame == null) return;
+        frameActive = projectFrame.isActive();
+        projectFrame.addWindowListener(frameFocusListener);
     }
 
-    public Optional<GitRepository> getGitRepo(Project project) {
-        var repositoryManager = GitRepositoryManager.getInstance(project);
-        List<GitRepository> repositories = repositoryManager.getRepositories();
-        if (repositories.isEmpty()) {
-            return Optional.empty();
+    /**
+     * Tracks the gitlab project and branch of one repository.
+     */
+    private class RepositoryWatcher implements PipelineSubscriber {
+
+        private final GitRepository repository;
+        private final AtomicReference<PipelineSnapshot> latestSnapshot = new AtomicReference<>();
+        private volatile String gitlabUrl;
+        private volatile ProjectDto projectDto;
+        private volatile boolean projectValidated;
+        private volatile PipelineKey subscribedKey;
+        private reactor.core.Disposable subscription;
+        private volatile boolean disposed;
+
+        RepositoryWatcher(GitRepository repository) {
+            this.repository = repository;
         }
-        return Optional.of(repositories.get(0));
-    }
 
+        String branch() {
+            return Optional.ofNullable(repository.getCurrentBranch()).map(GitReference::getName).orElse("master");
+        }
 
-    private record StagePanelDto(JLabel label, List<PipelineJob> stageJobs) {
+        /**
+         * Resolves the gitlab instance and project of the repository and subscribes to the pipelines of its branch.
+         * A project known from the cache is used right away and revalidated in the background.
+         * Repositories hosted on no configured instance are not watched, the watch of one whose instance was removed ends.
+         */
+        void refresh() {
+            if (disposed || !isRunning) return;
+            var instanceUrl = pollingService.getGitlabUrl(repository).orElse(null);
+            if (instanceUrl == null) {
+                unsubscribe();
+                return;
+            }
+            if (!instanceUrl.equals(gitlabUrl)) {
+                gitlabUrl = instanceUrl;
+                projectDto = null;
+                projectValidated = false;
+            }
+            if (projectValidated) {
+                updateSubscription(projectDto);
+                return;
+            }
+            var connection = pollingService.getConnection(instanceUrl);
+            var remoteUrl = GitlabProjectConnection.getRemoteUrl(repository);
+            if (projectDto == null) {
+                remoteUrl.flatMap(PipelineCacheStorage.getInstance()::getProject).ifPresent(this::updateSubscription);
+            }
+            connection.getProject(repository)
+                    .doOnNext(resolvedProject -> {
+                        projectValidated = true;
+                        remoteUrl.ifPresent(url -> PipelineCacheStorage.getInstance().putProject(url, resolvedProject));
+                    })
+                    .subscribe(this::updateSubscription);
+        }
 
-    }
+        private synchronized void updateSubscription(ProjectDto resolvedProject) {
+            if (disposed || !isRunning || gitlabUrl == null) return;
+            projectDto = resolvedProject;
+            var key = new PipelineKey(gitlabUrl, projectDto.id(), branch());
+            if (key.equals(subscribedKey)) {
+                pollingService.wakeUp(key);
+                return;
+            }
+            if (subscription != null) {
+                subscription.dispose();
+            }
+            latestSnapshot.set(null);
+            if (repository == activeRepository) {
+                displayLoading();
+            }
+            subscribedKey = key;
+            subscription = pollingService.subscribe(key, this);
+        }
 
-    private record JobPanelActionDto(JobDisplayAction jobDisplayAction, PipelineJob pipelineJob) {
+        private synchronized void unsubscribe() {
+            if (gitlabUrl == null) return;
+            gitlabUrl = null;
+            projectDto = null;
+            projectValidated = false;
+            subscribedKey = null;
+            if (subscription != null) {
+                subscription.dispose();
+                subscription = null;
+            }
+            latestSnapshot.set(null);
+            if (repository == activeRepository) {
+                displayLoading();
+            } else {
+                updateSummary();
+            }
+        }
 
+        @Override
+        public void onUpdate(PipelineState state) {
+            var key = subscribedKey;
+            if (state.pipeline() == null || key == null) return;
+            var snapshot = PipelineSnapshot.of(key.gitlabUrl(), state);
+            var previous = latestSnapshot.getAndSet(snapshot);
+            if (repository == activeRepository) {
+                display(snapshot);
+            } else if (previous == null || previous.pipeline().status() != snapshot.pipeline().status()) {
+                updateSummary();
+            }
+        }
+
+        @Override
+        public PollingPriority getPollingPriority() {
+            if (!frameActive) return PollingPriority.PAUSED;
+            return repository == activeRepository ? PollingPriority.FOREGROUND : PollingPriority.BACKGROUND;
+        }
+
+        synchronized void dispose() {
+            disposed = true;
+            if (subscription != null) {
+                subscription.dispose();
+            }
+        }
     }
 }
@@ -0,0 +1,17 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+/**
+ * Receives the results of the shared {@link PipelinePollingService}.
+ */
+public interface PipelineSubscriber {
+
+    /**
+     * Called from the polling thread after every poll of the subscribed key.
+     */
+    void onUpdate(PipelineState state);
+
+    /**
+     * How often the subscriber wants the key to be polled. The highest priority of all subscribers wins.
+     */
+    PollingPriority getPollingPriority();
+}
@@ -0,0 +1,30 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.BridgeJob;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * How a {@link PipelineWatch} gets its pipeline and jobs from gitlab.
+ */
+public interface PipelineTransport {
+
+    /**
+     * @return the newest pipeline of the ref, empty only if gitlab answered that there is none, an error if it could
+     * not be asked
+     */
+    Mono<PipelineDto> getLatestPipeline(long projectId, String ref);
+
+    /**
+     * @return all jobs of the pipeline, empty if they could not be read completely
+     */
+    Mono<List<PipelineJob>> getJobsFromPipeline(PipelineDto pipelineDto);
+
+    /**
+     * @return the trigger jobs of the pipeline, empty list if it has none
+     */
+    Mono<List<BridgeJob>> getBridges(PipelineDto pipelineDto);
+}
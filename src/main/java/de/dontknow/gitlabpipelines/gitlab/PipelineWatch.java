@@ -0,0 +1,171 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.config.PipelineCacheStorage;
+import de.dontknow.gitlabpipelines.gitlab.dto.DownstreamPipeline;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Polling state of a single {@link PipelineKey}, shared by all of its subscribers.
+ */
+class PipelineWatch {
+
+    /**
+     * Safety net poll interval while the pipeline relay pushes changes.
+     */
+    private static final Duration PUSHED_POLL_DELAY = Duration.ofMinutes(2);
+
+    private final PipelineKey key;
+    private final List<PipelineSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final PollingStrategy pollingStrategy = new AdaptivePollingStrategy();
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private volatile Instant nextPollAt = Instant.now();
+    private final PipelineStateStore store = new PipelineStateStore();
+    private final PipelineCacheStorage pipelineCache;
+    private volatile PipelineEventStream eventStream;
+
+    /**
+     * Starts with the cached state of the key, so subscribers see the last known pipeline before the first poll.
+     */
+    PipelineWatch(PipelineKey key, PipelineCacheStorage pipelineCache) {
+        this.key = key;
+        this.pipelineCache = pipelineCache;
+        pipelineCache.getPipeline(key).ifPresent(store::restore);
+    }
+
+    PipelineKey key() {
+        return key;
+    }
+
+    void addSubscriber(PipelineSubscriber subscriber) {
+        subscribers.add(subscriber);
+        var lastState = store.current();
+        if (lastState != null) {
+            subscriber.onUpdate(lastState);
+        }
+        wakeUp();
+    }
+
+    /**
+     * @return whether no subscriber is left
+     */
+    boolean removeSubscriber(PipelineSubscriber subscriber) {
+        subscribers.remove(subscriber);
+        return subscribers.isEmpty();
+    }
+
+    /**
+     * Replaces the event stream that wakes the watch up on pushed changes, {@code null} to only poll.
+     */
+    void listenTo(PipelineEventStream newEventStream) {
+        var previous = eventStream;
+        eventStream = newEventStream;
+        if (previous != null) {
+            previous.close();
+        }
+        if (newEventStream != null) {
+            newEventStream.open();
+        }
+    }
+
+    void close() {
+        listenTo(null);
+    }
+
+    void wakeUp() {
+        pollingStrategy.reset();
+        nextPollAt = Instant.now();
+    }
+
+    boolean isDue(Instant now) {
+        return !polling.get() && !nextPollAt.isAfter(now);
+    }
+
+    Mono<Void> poll(PipelineTransport transport) {
+        if (!polling.compareAndSet(false, true)) return Mono.empty();
+        var lastState = store.current();
+        return fetch(transport)
+                .defaultIfEmpty(PipelineState.EMPTY)
+                .doOnNext(newState -> {
+                    if (shouldPersist(lastState, newState)) {
+                        pipelineCache.putPipeline(key, newState);
+                    }
+                    subscribers.forEach(subscriber -> subscriber.onUpdate(newState));
+                    scheduleNextPoll(newState);
+                })
+                .doOnError(e -> {
+                    var staleState = store.markStale();
+                    if (staleState != null) {
+                        subscribers.forEach(subscriber -> subscriber.onUpdate(staleState));
+                    }
+                    scheduleNextPoll(PipelineState.EMPTY);
+                })
+                .doFinally(signal -> polling.set(false))
+                .then();
+    }
+
+    /**
+     * The cache only serves the first paint after a restart, so a running pipeline is stored when it appears and
+     * once it finished, not on every job change in between.
+     */
+    private static boolean shouldPersist(PipelineState lastState, PipelineState newState) {
+        if (newState.pipeline() == null || newState.equals(lastState)) return false;
+        if (lastState == null || lastState.pipeline() == null || lastState.pipeline().id() != newState.pipeline().id()) return true;
+        var status = newState.pollingStatus();
+        return status != null && !status.isInProgress();
+    }
+
+    private void scheduleNextPoll(PipelineState polledState) {
+        var priority = subscribers.stream()
+                .map(PipelineSubscriber::getPollingPriority)
+                .reduce(PollingPriority.PAUSED, PollingPriority::highest);
+        var pipelineStatus = polledState.pollingStatus();
+        var pushed = eventStream != null && eventStream.isConnected();
+        nextPollAt = pollingStrategy.nextDelay(pipelineStatus, priority)
+                .map(delay -> pushed && delay.compareTo(PUSHED_POLL_DELAY) < 0 ? PUSHED_POLL_DELAY : delay)
+                .map(Instant.now()::plus)
+                .orElse(Instant.MAX);
+    }
+
+    private Mono<PipelineState> fetch(PipelineTransport transport) {
+        var lastState = store.current();
+        long sequence = store.beginFetch();
+        return transport.getLatestPipeline(key.projectId(), key.ref())
+                .switchIfEmpty(Mono.fromRunnable(store::clear))
+                .flatMap(pipeline -> {
+                    if (lastState != null && !lastState.stale() && pipeline.equals(lastState.pipeline())
+                            && !pipeline.status().isInProgress() && !lastState.hasUnfinishedDownstream()) {
+                        return Mono.just(lastState);
+                    }
+                    store.updatePipeline(pipeline, sequence);
+                    return fetchJobs(transport, pipeline, lastState, sequence)
+                            .switchIfEmpty(Mono.error(() -> new IOException("The jobs of pipeline " + pipeline.id() + " could not be read")))
+                            .map(fetched -> store.publish());
+                });
+    }
+
+    /**
+     * Writes the pipeline's jobs and bridges and its downstream pipelines into the store, completes empty if the job
+     * listing could not be read. Only the jobs of this listing are kept, gitlab leaves out retried attempts.
+     */
+    private Mono<Boolean> fetchJobs(PipelineTransport transport, PipelineDto pipeline, PipelineState lastState, long sequence) {
+        boolean samePipeline = lastState != null && lastState.pipeline() != null && lastState.pipeline().id() == pipeline.id();
+        var previousDownstream = samePipeline ? lastState.downstream() : Map.<Integer, DownstreamPipeline>of();
+        return transport.getJobsFromPipeline(pipeline)
+                .zipWith(DownstreamResolver.resolve(transport, pipeline, previousDownstream), (pipelineJobs, downstream) -> {
+                    store.updateJobs(Stream.concat(pipelineJobs.stream(), downstream.bridgeJobs().stream()).toList(), sequence);
+                    store.updateDownstream(pipeline, downstream.downstream(), sequence);
+                    return true;
+                });
+    }
+}
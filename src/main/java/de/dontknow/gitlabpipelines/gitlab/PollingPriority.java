@@ -0,0 +1,23 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+/**
+ * How urgently a subscriber needs fresh pipeline data.
+ */
+public enum PollingPriority {
+    /**
+     * The pipeline is shown in a focused frame.
+     */
+    FOREGROUND,
+    /**
+     * The pipeline belongs to a repository that is not active in the editor.
+     */
+    BACKGROUND,
+    /**
+     * Nobody looks at the pipeline, polling can stop.
+     */
+    PAUSED;
+
+    static PollingPriority highest(PollingPriority first, PollingPriority second) {
+        return first.ordinal() <= second.ordinal() ? first : second;
+    }
+}
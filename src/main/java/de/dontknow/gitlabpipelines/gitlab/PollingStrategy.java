@@ -0,0 +1,24 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Decides how long the pipeline watcher waits between two polls.
+ */
+public interface PollingStrategy {
+
+    /**
+     * @param pipelineStatus status of the displayed pipeline, {@code null} if there is none
+     * @param priority       the highest priority among the subscribers
+     * @return the delay until the next poll, or empty to pause until {@link #reset()} is called
+     */
+    Optional<Duration> nextDelay(GitlabStatus pipelineStatus, PollingPriority priority);
+
+    /**
+     * Returns to the fastest polling rate, e.g. after a branch switch.
+     */
+    void reset();
+}
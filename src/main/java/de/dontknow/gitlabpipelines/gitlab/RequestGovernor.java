@@ -0,0 +1,194 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.OptionalLong;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Token bucket of one gitlab host in front of the http client. Requests wait for a token in priority order
+ * instead of holding a thread. The refill rate follows gitlab's {@code RateLimit-Remaining} and
+ * {@code RateLimit-Reset} headers, so the remaining budget is spread until the reset instead of being
+ * spent at once. A {@code 429 Too Many Requests} pauses the host for its {@code Retry-After}.
+ */
+class RequestGovernor {
+
+    static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Requests per second until gitlab reported its limit, well below the 2000 per minute gitlab.com allows by default.
+     */
+    private static final double DEFAULT_RATE = 10;
+    private static final double MIN_RATE = .2;
+    private static final int BURST = 20;
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(30);
+    private static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(5);
+    private static final Duration MIN_DRAIN_DELAY = Duration.ofMillis(5);
+
+    private final int maxConcurrency;
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(Comparator
+            .comparing((Waiter waiter) -> waiter.priority)
+            .thenComparingLong(waiter -> waiter.sequence));
+    private long sequence;
+    private double tokens = BURST;
+    private double ratePerSecond = DEFAULT_RATE;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilNanos = lastRefillNanos;
+    private int inFlight;
+    private boolean drainScheduled;
+
+    RequestGovernor(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    <T> Mono<T> limit(RequestPriority priority, Mono<T> request) {
+        return Mono.defer(() -> {
+            var waiter = new Waiter(priority);
+            return acquire(waiter)
+                    .then(Mono.defer(() -> request))
+                    .doFinally(signal -> finish(waiter));
+        });
+    }
+
+    /**
+     * Adapts the bucket to the rate limit gitlab reported with a response.
+     */
+    void onResponse(int statusCode, HttpHeaders headers) {
+        synchronized (this) {
+            var remaining = header(headers, "RateLimit-Remaining");
+            var reset = header(headers, "RateLimit-Reset");
+            if (remaining.isPresent() && reset.isPresent()) {
+                long secondsUntilReset = Math.max(1, reset.getAsLong() - Instant.now().getEpochSecond());
+                ratePerSecond = Math.max(MIN_RATE, (double) remaining.getAsLong() / secondsUntilReset);
+                tokens = Math.min(tokens, remaining.getAsLong());
+            }
+            if (statusCode == HTTP_TOO_MANY_REQUESTS) {
+                var retryAfter = retryAfter(headers);
+                pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + retryAfter.toNanos());
+                tokens = 0;
+            }
+        }
+        drain();
+    }
+
+    private Mono<Void> acquire(Waiter waiter) {
+        return Mono.create(sink -> {
+            waiter.sink = sink;
+            synchronized (this) {
+                waiter.sequence = sequence++;
+                waiters.add(waiter);
+            }
+            drain();
+        });
+    }
+
+    /**
+     * Ends the waiter however its request ended. The slot of a granted waiter is given back even if it was
+     * cancelled before the grant reached it, a waiting one just leaves the queue.
+     */
+    private void finish(Waiter waiter) {
+        var previous = waiter.state.getAndSet(WaiterState.FINISHED);
+        if (previous == WaiterState.GRANTED) {
+            release();
+        } else if (previous == WaiterState.WAITING) {
+            synchronized (this) {
+                waiters.remove(waiter);
+            }
+        }
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    private void drain() {
+        var granted = new ArrayList<Waiter>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            while (!waiters.isEmpty() && inFlight < maxConcurrency && now >= pausedUntilNanos && tokens >= 1) {
+                var waiter = waiters.poll();
+                if (!waiter.state.compareAndSet(WaiterState.WAITING, WaiterState.GRANTED)) continue;
+                tokens--;
+                inFlight++;
+                granted.add(waiter);
+            }
+            if (!waiters.isEmpty() && inFlight < maxConcurrency && !drainScheduled) {
+                // out of tokens or paused, try again once the next token is due
+                long tokenDelay = (long) ((1 - tokens) / ratePerSecond * TimeUnit.SECONDS.toNanos(1));
+                long delay = Math.max(Math.max(tokenDelay, pausedUntilNanos - now), MIN_DRAIN_DELAY.toNanos());
+                drainScheduled = true;
+                Mono.delay(Duration.ofNanos(delay)).subscribe(tick -> {
+                    synchronized (this) {
+                        drainScheduled = false;
+                    }
+                    drain();
+                });
+            }
+        }
+        // completing a waiter starts its request, which must not happen while holding the lock
+        granted.forEach(waiter -> waiter.sink.success());
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(BURST, tokens + (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1) * ratePerSecond);
+        lastRefillNanos = now;
+    }
+
+    private static OptionalLong header(HttpHeaders headers, String name) {
+        return headers.firstValue(name)
+                .map(String::trim)
+                .filter(value -> value.matches("\\d+"))
+                .map(value -> OptionalLong.of(Long.parseLong(value)))
+                .orElse(OptionalLong.empty());
+    }
+
+    /**
+     * {@code Retry-After} is either a number of seconds or a http date.
+     */
+    static Duration retryAfter(HttpHeaders headers) {
+        var retryAfter = headers.firstValue("Retry-After").map(String::trim).orElse("");
+        Duration delay = DEFAULT_RETRY_AFTER;
+        if (retryAfter.matches("\\d+")) {
+            delay = Duration.ofSeconds(Long.parseLong(retryAfter));
+        } else if (!retryAfter.isEmpty()) {
+            try {
+                delay = Duration.between(Instant.now(), ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+            } catch (DateTimeParseException ignored) {
+                // keep the default
+            }
+        }
+        if (delay.isNegative()) return Duration.ZERO;
+        return delay.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : delay;
+    }
+
+    private enum WaiterState {
+        WAITING, GRANTED, FINISHED
+    }
+
+    private static final class Waiter {
+
+        private final RequestPriority priority;
+        private final AtomicReference<WaiterState> state = new AtomicReference<>(WaiterState.WAITING);
+        private long sequence;
+        private MonoSink<Void> sink;
+
+        Waiter(RequestPriority priority) {
+            this.priority = priority;
+        }
+    }
+}
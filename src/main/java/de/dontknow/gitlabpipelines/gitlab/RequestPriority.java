@@ -0,0 +1,23 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+/**
+ * Order in which a {@link RequestGovernor} lets queued requests through, the first constant goes first.
+ */
+enum RequestPriority {
+    /**
+     * Someone waits for the answer, e.g. the settings validation or the project of a repository.
+     */
+    INTERACTIVE,
+    /**
+     * The latest pipeline of a ref, everything else is only fetched if it changed.
+     */
+    PIPELINE,
+    /**
+     * The job listing of a pipeline.
+     */
+    JOBS,
+    /**
+     * A single job missing from the listing.
+     */
+    SINGLE_JOB
+}
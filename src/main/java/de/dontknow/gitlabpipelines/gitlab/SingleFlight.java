@@ -0,0 +1,40 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent identical calls share one execution. The first subscriber for a key starts the call, everyone
+ * subscribing while it is in flight gets the same result. Once the last subscriber cancelled, the call is
+ * cancelled as well, so superseded requests do not keep a connection busy.
+ *
+ * @param <K> identifies identical calls, e.g. uri and token of a request
+ */
+class SingleFlight<K> {
+
+    private final Map<K, Mono<?>> inFlight = new ConcurrentHashMap<>();
+
+    <T> Mono<T> execute(K key, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            @SuppressWarnings("unchecked") var flight = (Mono<T>) inFlight.computeIfAbsent(key, flightKey -> {
+                var thisFlight = new AtomicReference<Mono<T>>();
+                // leaves the map before the result is emitted, a caller arriving after that starts a new call
+                // instead of joining a finished one, and never removes a newer flight of the same key
+                Runnable land = () -> inFlight.remove(flightKey, thisFlight.get());
+                thisFlight.set(call.get()
+                        .doOnNext(value -> land.run())
+                        .doOnTerminate(land)
+                        .doOnCancel(land)
+                        .flux()
+                        .share()
+                        .singleOrEmpty());
+                return thisFlight.get();
+            });
+            return flight;
+        });
+    }
+}
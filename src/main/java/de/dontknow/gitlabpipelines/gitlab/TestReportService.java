@@ -0,0 +1,75 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.intellij.openapi.application.ApplicationManager;
+import de.dontknow.gitlabpipelines.gitlab.dto.FailedTestCase;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.TestReportSummary;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Test reports of pipelines. The summary is prefetched once per displayed pipeline when it finished, the full report, which can be
+ * tens of megabytes, only when the failed tests of a suite are requested. Reports of finished pipelines never
+ * change and are kept for the most recently used pipelines.
+ */
+public class TestReportService {
+
+    private static final int CACHED_PIPELINES = 32;
+    private static final Set<GitlabStatus> FINISHED = EnumSet.of(GitlabStatus.success, GitlabStatus.failed, GitlabStatus.canceled, GitlabStatus.skipped);
+
+    private final Map<PipelineRef, TestReportSummary> summaries = lruMap();
+    private final Map<PipelineRef, Map<String, List<FailedTestCase>>> failedTestCases = lruMap();
+
+    public static TestReportService getInstance() {
+        return ApplicationManager.getApplication()
+                .getService(TestReportService.class);
+    }
+
+    /**
+     * @return the test counts per suite, {@link TestReportSummary#EMPTY} if the pipeline reported no tests
+     */
+    public Mono<TestReportSummary> getSummary(String gitlabUrl, PipelineDto pipeline) {
+        var ref = new PipelineRef(gitlabUrl, pipeline.id());
+        var cached = summaries.get(ref);
+        if (cached != null) return Mono.just(cached);
+        return PipelinePollingService.getInstance().getConnection(gitlabUrl).getTestReportSummary(pipeline)
+                .doOnNext(summary -> {
+                    if (FINISHED.contains(pipeline.status())) summaries.put(ref, summary);
+                })
+                .defaultIfEmpty(TestReportSummary.EMPTY);
+    }
+
+    public Mono<List<FailedTestCase>> getFailedTestCases(String gitlabUrl, PipelineDto pipeline, String suiteName) {
+        var ref = new PipelineRef(gitlabUrl, pipeline.id());
+        var cached = failedTestCases.get(ref);
+        if (cached != null) return Mono.just(cached.getOrDefault(suiteName, List.of()));
+        return PipelinePollingService.getInstance().getConnection(gitlabUrl).getFailedTestCases(pipeline)
+                .doOnNext(failedCases -> {
+                    if (FINISHED.contains(pipeline.status())) failedTestCases.put(ref, failedCases);
+                })
+                .map(failedCases -> failedCases.getOrDefault(suiteName, List.of()))
+                .defaultIfEmpty(List.of());
+    }
+
+    private static <V> Map<PipelineRef, V> lruMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PipelineRef, V> eldest) {
+                return size() > CACHED_PIPELINES;
+            }
+        });
+    }
+
+    /**
+     * Pipeline ids are only unique per gitlab instance.
+     */
+    private record PipelineRef(String gitlabUrl, int pipelineId) {
+    }
+}
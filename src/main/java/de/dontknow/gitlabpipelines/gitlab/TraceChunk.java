@@ -0,0 +1,17 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+/**
+ * Bytes of a job log read with one range request.
+ *
+ * @param start         offset of the first byte within the whole log
+ * @param rangeIgnored  the server ignored the range and sent the whole log
+ */
+record TraceChunk(byte[] bytes, long start, boolean rangeIgnored) {
+
+    /**
+     * @return offset of the first byte the next request has to read
+     */
+    long end() {
+        return start + bytes.length;
+    }
+}
@@ -0,0 +1,19 @@
+package de.dontknow.gitlabpipelines.gitlab.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Trigger job of a pipeline that starts a child pipeline or a pipeline of another project.
+ *
+ * @param downstream_pipeline the triggered pipeline, {@code null} while it was not created yet
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record BridgeJob(int id, String stage, GitlabStatus status, String name, String web_url, PipelineDto downstream_pipeline) {
+
+    /**
+     * @param status the status shown for the bridge, usually the one of its downstream pipelines
+     */
+    public PipelineJob toJob(PipelineDto pipeline, GitlabStatus status) {
+        return new PipelineJob(id, stage, status, name, pipeline, web_url);
+    }
+}
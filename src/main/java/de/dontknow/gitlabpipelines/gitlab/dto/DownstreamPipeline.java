@@ -0,0 +1,38 @@
+package de.dontknow.gitlabpipelines.gitlab.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pipeline triggered by a bridge job, together with its own jobs and downstream pipelines.
+ *
+ * @param jobs       the jobs of the pipeline, its bridges carry the {@link #effectiveStatus()} of their pipelines
+ * @param downstream the pipelines triggered by the bridges of this one, by bridge job id
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record DownstreamPipeline(PipelineDto pipeline, List<PipelineJob> jobs, Map<Integer, DownstreamPipeline> downstream) {
+
+    /**
+     * The status of the pipeline combined with the ones of its downstream pipelines, so a running or failed
+     * child shows up in the stage of its bridge even if the bridge itself does not wait for it.
+     */
+    public GitlabStatus effectiveStatus() {
+        var statuses = new ArrayList<GitlabStatus>();
+        statuses.add(pipeline.status());
+        downstream.values().forEach(child -> statuses.add(child.effectiveStatus()));
+        var aggregated = GitlabStatus.aggregate(statuses);
+        return aggregated == null ? pipeline.status() : aggregated;
+    }
+
+    /**
+     * Whether neither the pipeline nor any of its downstream pipelines can change anymore.
+     */
+    @JsonIgnore
+    public boolean isFinished() {
+        return !pipeline.status().isInProgress() && downstream.values().stream().allMatch(DownstreamPipeline::isFinished);
+    }
+}
@@ -0,0 +1,9 @@
+package de.dontknow.gitlabpipelines.gitlab.dto;
+
+/**
+ * A failed or erroneous test case of a pipeline's test report.
+ *
+ * @param status {@code failed} or {@code error}
+ */
+public record FailedTestCase(String classname, String name, String status, String system_output) {
+}
@@ -1,8 +1,10 @@
 package de.dontknow.gitlabpipelines.gitlab.dto;
 
-import com.intellij.openapi.util.IconLoader;
+import de.dontknow.gitlabpipelines.widget.StatusIconRegistry;
 
 import javax.swing.*;
+import java.util.Collection;
+import java.util.Locale;
 
 public enum GitlabStatus {
     waiting_for_resource("/Icons/status-waiting.svg"),
@@ -13,7 +15,10 @@ public enum GitlabStatus {
     created("/Icons/status-waiting.svg"),
     canceled("/Icons/status_canceled.svg"),
     skipped("/Icons/status_skipped.svg"),
-    manual("/Icons/status_manual.svg");
+    manual("/Icons/status_manual.svg"),
+    preparing("/Icons/status-waiting.svg"),
+    scheduled("/Icons/status-scheduled.svg"),
+    waiting_for_callback("/Icons/status-waiting.svg");
 
     private String iconPath;
 
@@ -25,7 +30,45 @@ public enum GitlabStatus {
         return iconPath.replaceFirst("/", "");
     }
 
+    /**
+     * Whether jobs in this status can still change without user interaction.
+     */
+    public boolean isInProgress() {
+        return this == running || this == pending || this == created || this == waiting_for_resource
+                || this == preparing || this == scheduled || this == waiting_for_callback;
+    }
+
+    /**
+     * Looks up a status by its rest or graphql name. Statuses added by newer gitlab versions are shown as pending,
+     * so they keep being polled instead of failing the whole response.
+     */
+    public static GitlabStatus of(String name) {
+        try {
+            return valueOf(name.toLowerCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return pending;
+        }
+    }
+
+    /**
+     * Combines job statuses into the status shown for their stage.
+     *
+     * @return the combined status, or {@code null} if the statuses do not map to a single one
+     */
+    public static GitlabStatus aggregate(Collection<GitlabStatus> statuses) {
+        if (statuses.stream().anyMatch(status -> status == failed)) return failed;
+        if (statuses.stream().anyMatch(status -> status == running)) return running;
+        if (statuses.stream().anyMatch(status -> status == pending)) return pending;
+        if (statuses.stream().anyMatch(status -> status == manual)) return manual;
+        if (statuses.stream().allMatch(status -> status == created)) return created;
+        if (statuses.stream().allMatch(status -> status == success)) return success;
+        return null;
+    }
+
+    /**
+     * The cached icon of the status, see {@link StatusIconRegistry}.
+     */
     public Icon getIcon() {
-        return IconLoader.getIcon(iconPath, getClass());
+        return StatusIconRegistry.getInstance().getIcon(this);
     }
 }
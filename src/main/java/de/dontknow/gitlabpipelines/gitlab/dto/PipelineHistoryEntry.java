@@ -0,0 +1,29 @@
+package de.dontknow.gitlabpipelines.gitlab.dto;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A past pipeline of a ref as shown in the pipeline history. The jobs are only known once the pipeline finished.
+ *
+ * @param jobs_fetched whether the jobs were read, a pipeline may have none at all, e.g. if its yaml is invalid
+ */
+public record PipelineHistoryEntry(int id, GitlabStatus status, Instant created_at, Instant updated_at, String web_url,
+                                   List<HistoryJob> jobs, boolean jobs_fetched) {
+
+    /**
+     * Wall clock time from creation to the last update, the pipeline listing does not report the duration itself.
+     */
+    public Duration duration() {
+        if (created_at == null || updated_at == null || updated_at.isBefore(created_at)) return Duration.ZERO;
+        return Duration.between(created_at, updated_at);
+    }
+
+    public PipelineHistoryEntry withJobs(List<HistoryJob> pipelineJobs) {
+        return new PipelineHistoryEntry(id, status, created_at, updated_at, web_url, List.copyOf(pipelineJobs), true);
+    }
+
+    public record HistoryJob(String name, String stage, GitlabStatus status) {
+    }
+}
@@ -0,0 +1,21 @@
+package de.dontknow.gitlabpipelines.gitlab.dto;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Result of {@code /pipelines/:id/test_report_summary}, the counts without the test cases.
+ */
+public record TestReportSummary(List<TestSuiteSummary> test_suites) {
+
+    public static final TestReportSummary EMPTY = new TestReportSummary(List.of());
+
+    /**
+     * @return the suites reported by any of the given jobs
+     */
+    public List<TestSuiteSummary> suitesOf(Collection<Integer> jobIds) {
+        return test_suites.stream()
+                .filter(suite -> suite.build_ids().stream().anyMatch(jobIds::contains))
+                .toList();
+    }
+}
@@ -0,0 +1,15 @@
+package de.dontknow.gitlabpipelines.gitlab.dto;
+
+import java.util.List;
+
+/**
+ * Test counts of one suite of a pipeline's test report.
+ *
+ * @param build_ids the jobs that reported the suite
+ */
+public record TestSuiteSummary(String name, int total_count, int failed_count, int error_count, int skipped_count, List<Integer> build_ids) {
+
+    public int brokenCount() {
+        return failed_count + error_count;
+    }
+}
@@ -0,0 +1,127 @@
+package de.dontknow.gitlabpipelines.widget;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import de.dontknow.gitlabpipelines.gitlab.GitlabMetrics;
+import de.dontknow.gitlabpipelines.gitlab.MetricsSnapshot;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.HierarchyEvent;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Shows the {@link GitlabMetrics} as a table per endpoint, refreshed every two seconds while it is visible.
+ */
+class DiagnosticsPanel implements Disposable {
+
+    private static final int REFRESH_MILLIS = 2000;
+    private static final String[] COLUMNS = {"Endpoint", "Requests", "304 hits", "Error responses", "Failures", "KiB",
+            "Headers p50 ms", "Headers p99 ms", "Total mean ms", "Total p50 ms", "Total p99 ms"};
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Project project;
+    private final JPanel component = new JPanel(new BorderLayout());
+    private final DefaultTableModel endpointModel = new DefaultTableModel(COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final JBLabel summaryLabel = new JBLabel();
+    private final Timer refreshTimer = new Timer(REFRESH_MILLIS, event -> refresh());
+
+    DiagnosticsPanel(Project project) {
+        this.project = project;
+        var exportButton = new JButton("Export JSON...");
+        exportButton.addActionListener(event -> export());
+        var resetButton = new JButton("Reset");
+        resetButton.addActionListener(event -> {
+            GitlabMetrics.getInstance().reset();
+            refresh();
+        });
+        var toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        toolbar.add(exportButton);
+        toolbar.add(resetButton);
+        toolbar.add(summaryLabel);
+        component.add(toolbar, BorderLayout.NORTH);
+        component.add(new JBScrollPane(new JBTable(endpointModel)), BorderLayout.CENTER);
+        // hiding the tool window or selecting another of its tabs hides the panel
+        component.addHierarchyListener(event -> {
+            if ((event.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                updateRefreshTimer();
+            }
+        });
+    }
+
+    JComponent getComponent() {
+        return component;
+    }
+
+    private void updateRefreshTimer() {
+        if (component.isShowing()) {
+            refresh();
+            refreshTimer.start();
+        } else {
+            refreshTimer.stop();
+        }
+    }
+
+    private void refresh() {
+        var snapshot = GitlabMetrics.getInstance().snapshot();
+        endpointModel.setRowCount(0);
+        snapshot.endpoints().forEach((endpoint, metrics) -> endpointModel.addRow(new Object[]{
+                endpoint,
+                metrics.requests(),
+                String.format("%.0f%%", metrics.cacheHitRatio() * 100),
+                metrics.errorResponses(),
+                metrics.failures(),
+                metrics.bytes() / 1024,
+                millis(metrics.headerLatency().p50Micros()),
+                millis(metrics.headerLatency().p99Micros()),
+                millis(metrics.totalLatency().meanMicros()),
+                millis(metrics.totalLatency().p50Micros()),
+                millis(metrics.totalLatency().p99Micros())
+        }));
+        var ticks = snapshot.ticks();
+        var edtUpdates = snapshot.edtUpdates();
+        summaryLabel.setText(String.format("%d ticks polling %d watches, p50 %s ms, p99 %s ms | %d EDT updates, p50 %s ms, p99 %s ms | %d s",
+                ticks.count(), snapshot.polledWatches(), millis(ticks.p50Micros()), millis(ticks.p99Micros()),
+                edtUpdates.count(), millis(edtUpdates.p50Micros()), millis(edtUpdates.p99Micros()), snapshot.uptimeSeconds()));
+    }
+
+    private void export() {
+        var descriptor = new FileSaverDescriptor("Export Gitlab Metrics", "Metrics of the gitlab pipeline widget as json", "json");
+        var target = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, project).save("gitlab-metrics.json");
+        if (target == null) return;
+        try {
+            Files.writeString(target.getFile().toPath(), toJson(GitlabMetrics.getInstance().snapshot()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Messages.showErrorDialog(project, e.getMessage(), "Export Gitlab Metrics");
+        }
+    }
+
+    private String toJson(MetricsSnapshot snapshot) throws JsonProcessingException {
+        return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(snapshot);
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.1f", micros / 1000d);
+    }
+
+    @Override
+    public void dispose() {
+        refreshTimer.stop();
+    }
+}
@@ -0,0 +1,22 @@
+package de.dontknow.gitlabpipelines.widget;
+
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.content.ContentFactory;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Tool window with the diagnostics of the pipeline widget.
+ */
+public class DiagnosticsToolWindowFactory implements ToolWindowFactory, DumbAware {
+
+    @Override
+    public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
+        var diagnosticsPanel = new DiagnosticsPanel(project);
+        var content = ContentFactory.getInstance().createContent(diagnosticsPanel.getComponent(), "Diagnostics", false);
+        content.setDisposer(diagnosticsPanel);
+        toolWindow.getContentManager().addContent(content);
+    }
+}
@@ -0,0 +1,66 @@
+package de.dontknow.gitlabpipelines.widget;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.ui.popup.JBPopupFactory;
+import com.intellij.openapi.ui.popup.PopupStep;
+import com.intellij.openapi.ui.popup.util.BaseListPopupStep;
+import com.intellij.ui.components.JBScrollPane;
+import de.dontknow.gitlabpipelines.gitlab.TestReportService;
+import de.dontknow.gitlabpipelines.gitlab.dto.FailedTestCase;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.TestSuiteSummary;
+
+import javax.swing.*;
+import java.util.List;
+
+/**
+ * Failed tests of one suite, loaded only once the suite is chosen in the stage popup.
+ */
+class FailedTestsStep extends BaseListPopupStep<FailedTestCase> {
+
+    static void show(String gitlabUrl, PipelineDto pipeline, TestSuiteSummary suite) {
+        if (suite.brokenCount() == 0) return;
+        TestReportService.getInstance().getFailedTestCases(gitlabUrl, pipeline, suite.name())
+                .subscribe(failedCases -> ApplicationManager.getApplication().invokeLater(() -> {
+                    if (failedCases.isEmpty()) return;
+                    JBPopupFactory.getInstance().createListPopup(new FailedTestsStep(suite.name(), failedCases)).showInFocusCenter();
+                }, ModalityState.any()));
+    }
+
+    private FailedTestsStep(String suiteName, List<FailedTestCase> failedCases) {
+        super("Failed tests of " + suiteName, failedCases);
+    }
+
+    @Override
+    public String getTextFor(FailedTestCase testCase) {
+        return testCase.classname() == null ? testCase.name() : testCase.classname() + "." + testCase.name();
+    }
+
+    @Override
+    public Icon getIconFor(FailedTestCase testCase) {
+        return GitlabStatus.failed.getIcon();
+    }
+
+    @Override
+    public PopupStep<?> onChosen(FailedTestCase testCase, boolean finalChoice) {
+        return doFinalStep(() -> showOutput(testCase));
+    }
+
+    @Override
+    public boolean isSpeedSearchEnabled() {
+        return true;
+    }
+
+    private void showOutput(FailedTestCase testCase) {
+        var output = new JTextArea(testCase.system_output() == null ? "No output reported" : testCase.system_output(), 25, 100);
+        output.setEditable(false);
+        JBPopupFactory.getInstance().createComponentPopupBuilder(new JBScrollPane(output), output)
+                .setTitle(getTextFor(testCase))
+                .setResizable(true)
+                .setMovable(true)
+                .createPopup()
+                .showInFocusCenter();
+    }
+}
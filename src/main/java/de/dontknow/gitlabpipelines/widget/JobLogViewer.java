@@ -0,0 +1,124 @@
+package de.dontknow.gitlabpipelines.widget;
+
+import com.intellij.execution.filters.TextConsoleBuilderFactory;
+import com.intellij.execution.process.AnsiEscapeDecoder;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.execution.ui.ConsoleView;
+import com.intellij.execution.ui.ConsoleViewContentType;
+import com.intellij.icons.AllIcons;
+import com.intellij.ide.BrowserUtil;
+import com.intellij.openapi.actionSystem.ActionManager;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.DefaultActionGroup;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.SimpleToolWindowPanel;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.wm.ToolWindowManager;
+import com.intellij.ui.content.ContentFactory;
+import de.dontknow.gitlabpipelines.gitlab.JobTraceTail;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+
+/**
+ * Shows the log of a job in a tab of the pipelines tool window and follows it while the job runs.
+ * The console keeps only the end of very long logs, its size is bounded by the IDE's console cycle buffer.
+ */
+public class JobLogViewer {
+
+    static final String TOOL_WINDOW_ID = "Gitlab Pipelines";
+
+    private JobLogViewer() {
+    }
+
+    /**
+     * @param gitlabUrl the instance the job runs on
+     */
+    public static void open(Project project, String gitlabUrl, PipelineJob job) {
+        var toolWindow = ToolWindowManager.getInstance(project).getToolWindow(TOOL_WINDOW_ID);
+        if (toolWindow == null) {
+            BrowserUtil.browse(job.web_url());
+            return;
+        }
+        var console = TextConsoleBuilderFactory.getInstance().createBuilder(project).getConsole();
+        var actions = new DefaultActionGroup();
+        actions.add(new OpenInBrowserAction(job));
+        actions.addAll(console.createConsoleActions());
+        var toolbar = ActionManager.getInstance().createActionToolbar("GitlabJobLog", actions, false);
+        toolbar.setTargetComponent(console.getComponent());
+        var panel = new SimpleToolWindowPanel(false, true);
+        panel.setToolbar(toolbar.getComponent());
+        panel.setContent(console.getComponent());
+
+        var content = ContentFactory.getInstance().createContent(panel, job.stage() + ": " + job.name(), false);
+        content.setCloseable(true);
+        var tail = JobTraceTail.start(gitlabUrl, job, new ConsoleListener(console));
+        content.setDisposer(() -> {
+            tail.stop();
+            Disposer.dispose(console);
+        });
+        var contentManager = toolWindow.getContentManager();
+        contentManager.addContent(content);
+        contentManager.setSelectedContent(content);
+        toolWindow.activate(null);
+    }
+
+    /**
+     * Prints the log with its ansi colors, gitlab runners color their output with sgr escape sequences.
+     */
+    private static class ConsoleListener implements JobTraceTail.Listener {
+
+        private final ConsoleView console;
+        private final AnsiEscapeDecoder ansiDecoder = new AnsiEscapeDecoder();
+
+        ConsoleListener(ConsoleView console) {
+            this.console = console;
+        }
+
+        @Override
+        public void onText(String text) {
+            ansiDecoder.escapeText(text, ProcessOutputTypes.STDOUT,
+                    (chunk, attributes) -> console.print(chunk, ConsoleViewContentType.getConsoleViewType(attributes)));
+        }
+
+        @Override
+        public void onSkipped(long skippedBytes) {
+            console.print("... " + StringUtil.formatFileSize(skippedBytes) + " of earlier output not shown ...\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+        }
+
+        @Override
+        public void onRangeIgnored(Duration pollInterval) {
+            console.print("... the server sends the whole log on every request, it is updated every "
+                    + pollInterval.toSeconds() + " seconds ...\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+        }
+
+        @Override
+        public void onFinished(GitlabStatus status) {
+            console.print("\nJob finished: " + status + "\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+        }
+
+        @Override
+        public void onFailure(Throwable error) {
+            console.print("\nCould not read the job log: " + error.getMessage() + "\n", ConsoleViewContentType.ERROR_OUTPUT);
+        }
+    }
+
+    private static class OpenInBrowserAction extends AnAction {
+
+        private final PipelineJob job;
+
+        OpenInBrowserAction(PipelineJob job) {
+            super("Open in Browser", "Open the job page in the browser", AllIcons.General.Web);
+            this.job = job;
+        }
+
+        @Override
+        public void actionPerformed(@NotNull AnActionEvent e) {
+            BrowserUtil.browse(job.web_url());
+        }
+    }
+}
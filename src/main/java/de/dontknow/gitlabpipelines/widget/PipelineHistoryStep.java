@@ -0,0 +1,92 @@
+package de.dontknow.gitlabpipelines.widget;
+
+import com.intellij.ide.BrowserUtil;
+import com.intellij.openapi.ui.popup.PopupStep;
+import com.intellij.openapi.ui.popup.util.BaseListPopupStep;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.text.DateFormatUtil;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineHistoryEntry;
+
+import javax.swing.*;
+import java.util.List;
+
+/**
+ * Popup listing the past pipelines of a ref. A finished pipeline opens the statuses of its jobs as sub menu.
+ */
+class PipelineHistoryStep extends BaseListPopupStep<PipelineHistoryEntry> {
+
+    PipelineHistoryStep(String ref, List<PipelineHistoryEntry> entries) {
+        super("Pipelines of " + ref, entries);
+    }
+
+    @Override
+    public String getTextFor(PipelineHistoryEntry entry) {
+        var text = "#" + entry.id() + "  " + entry.status();
+        if (!entry.status().isInProgress()) {
+            text += "  " + StringUtil.formatDuration(entry.duration().toMillis());
+        }
+        if (entry.created_at() != null) {
+            text += "  " + DateFormatUtil.formatPrettyDateTime(entry.created_at().toEpochMilli());
+        }
+        return text;
+    }
+
+    @Override
+    public Icon getIconFor(PipelineHistoryEntry entry) {
+        return entry.status().getIcon();
+    }
+
+    @Override
+    public boolean hasSubstep(PipelineHistoryEntry entry) {
+        return !entry.jobs().isEmpty();
+    }
+
+    @Override
+    public PopupStep<?> onChosen(PipelineHistoryEntry entry, boolean finalChoice) {
+        if (hasSubstep(entry) && !finalChoice) {
+            return new JobsStep(entry);
+        }
+        return doFinalStep(() -> browse(entry));
+    }
+
+    @Override
+    public boolean isSpeedSearchEnabled() {
+        return true;
+    }
+
+    private static void browse(PipelineHistoryEntry entry) {
+        if (entry.web_url() != null) {
+            BrowserUtil.browse(entry.web_url());
+        }
+    }
+
+    private static class JobsStep extends BaseListPopupStep<PipelineHistoryEntry.HistoryJob> {
+
+        private final PipelineHistoryEntry entry;
+
+        JobsStep(PipelineHistoryEntry entry) {
+            super(null, entry.jobs());
+            this.entry = entry;
+        }
+
+        @Override
+        public String getTextFor(PipelineHistoryEntry.HistoryJob job) {
+            return job.stage() + ": " + job.name();
+        }
+
+        @Override
+        public Icon getIconFor(PipelineHistoryEntry.HistoryJob job) {
+            return job.status().getIcon();
+        }
+
+        @Override
+        public PopupStep<?> onChosen(PipelineHistoryEntry.HistoryJob job, boolean finalChoice) {
+            return doFinalStep(() -> browse(entry));
+        }
+
+        @Override
+        public boolean isSpeedSearchEnabled() {
+            return true;
+        }
+    }
+}
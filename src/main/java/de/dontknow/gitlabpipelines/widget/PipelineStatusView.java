@@ -0,0 +1,221 @@
+package de.dontknow.gitlabpipelines.widget;
+
+import com.intellij.icons.AllIcons;
+import com.intellij.ide.DataManager;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.popup.JBPopupFactory;
+import com.intellij.openapi.util.text.StringUtil;
+import de.dontknow.gitlabpipelines.gitlab.PipelineSnapshot;
+import de.dontknow.gitlabpipelines.gitlab.PipelineSnapshotDiff;
+import de.dontknow.gitlabpipelines.gitlab.TestReportService;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineHistoryEntry;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import de.dontknow.gitlabpipelines.gitlab.dto.TestReportSummary;
+import reactor.core.publisher.Mono;
+
+import javax.swing.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Swing side of the status bar widget. Must only be used on the EDT.
+ */
+public class PipelineStatusView {
+
+    private final JPanel root = new JPanel();
+    private final JLabel summaryLabel = new JLabel();
+    private final JLabel historyLabel = new JLabel(AllIcons.Vcs.History);
+    private final Map<String, JLabel> stageLabels = new HashMap<>();
+    private final Project project;
+    /**
+     * The stage popups are built from it when they are opened, so they always show the latest polled jobs,
+     * even if no stage changed since the last {@link #apply}.
+     */
+    private final Supplier<PipelineSnapshot> latestSnapshot;
+    /**
+     * The snapshot the stages were last drawn from.
+     */
+    private PipelineSnapshot currentSnapshot;
+    /**
+     * Test counts of the displayed pipeline, prefetched once it finished so a stage popup opens right away.
+     * Popups of a running pipeline show no test counts, its report is still incomplete.
+     */
+    private TestReportSummary testSummary = TestReportSummary.EMPTY;
+    private boolean testSummaryRequested;
+    private reactor.core.Disposable pendingTestSummary;
+
+    /**
+     * @param latestSnapshot     the latest polled snapshot of the displayed pipeline
+     * @param onHistoryRequested called when the history icon was clicked
+     */
+    public PipelineStatusView(Project project, JPanel container, Supplier<PipelineSnapshot> latestSnapshot, Runnable onHistoryRequested) {
+        this.project = project;
+        this.latestSnapshot = latestSnapshot;
+        root.setLayout(new BoxLayout(root, BoxLayout.X_AXIS));
+        root.setOpaque(false);
+        summaryLabel.setVisible(false);
+        historyLabel.setVisible(false);
+        historyLabel.setToolTipText("Pipeline history");
+        historyLabel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                onHistoryRequested.run();
+            }
+        });
+        container.add(root);
+        container.add(historyLabel);
+        container.add(summaryLabel);
+    }
+
+    public void showHistory(String ref, List<PipelineHistoryEntry> entries) {
+        if (!historyLabel.isShowing()) return;
+        JBPopupFactory.getInstance().createListPopup(new PipelineHistoryStep(ref, entries)).showUnderneathOf(historyLabel);
+    }
+
+    /**
+     * Shows the combined status of the pipelines of all other repositories next to the active one.
+     *
+     * @param status  the combined status, {@code null} hides the summary
+     * @param tooltip one line per repository
+     */
+    public void showSummary(GitlabStatus status, List<String> tooltip) {
+        summaryLabel.setVisible(status != null);
+        if (status == null) return;
+        summaryLabel.setIcon(status.getIcon());
+        summaryLabel.setToolTipText("<html>" + tooltip.stream().map(StringUtil::escapeXmlEntities).collect(Collectors.joining("<br>")) + "</html>");
+    }
+
+    public void showLoading() {
+        stageLabels.clear();
+        currentSnapshot = null;
+        resetTestSummary();
+        root.removeAll();
+        root.add(new JLabel("fetching..."));
+        historyLabel.setVisible(false);
+        root.revalidate();
+        root.repaint();
+    }
+
+    public void apply(PipelineSnapshotDiff diff) {
+        var previous = currentSnapshot;
+        currentSnapshot = diff.snapshot();
+        if (!isSamePipeline(previous, currentSnapshot)) {
+            resetTestSummary();
+        }
+        var status = currentSnapshot.pipeline().status();
+        if (status == null || status.isInProgress()) {
+            // a retried pipeline gets a new report once it finished again
+            testSummaryRequested = false;
+        } else if (!testSummaryRequested) {
+            testSummaryRequested = true;
+            prefetchTestSummary(currentSnapshot);
+        }
+        if (diff.structureChanged()) {
+            render(diff.snapshot());
+            return;
+        }
+        diff.changedStages().forEach(stage -> {
+            var label = stageLabels.get(stage.name());
+            if (label != null && stage.status() != null) {
+                label.setIcon(stageIcon(stage.status(), diff.snapshot().stale()));
+            }
+        });
+    }
+
+    private void render(PipelineSnapshot snapshot) {
+        root.removeAll();
+        historyLabel.setVisible(true);
+        stageLabels.clear();
+        boolean isFirst = true;
+        for (var stage : snapshot.stages()) {
+            if (!isFirst) {
+                root.add(new JLabel(StatusIconRegistry.getInstance().getArrowIcon()));
+            }
+            isFirst = false;
+
+            var stageLabelDisplay = new JLabel();
+            var stageName = stage.name();
+            stageLabelDisplay.addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    openPopup(e, stageName);
+                }
+            });
+            if (stage.status() != null) {
+                stageLabelDisplay.setIcon(stageIcon(stage.status(), snapshot.stale()));
+            }
+            stageLabelDisplay.setToolTipText(snapshot.stale() ? stage.name() + " (last known state, updating...)" : stage.name());
+            stageLabels.put(stage.name(), stageLabelDisplay);
+            root.add(stageLabelDisplay);
+        }
+        root.revalidate();
+        root.repaint();
+    }
+
+    /**
+     * Stale stages are greyed out until gitlab confirms them.
+     */
+    private static Icon stageIcon(GitlabStatus status, boolean stale) {
+        var iconRegistry = StatusIconRegistry.getInstance();
+        return stale ? iconRegistry.getStaleIcon(status) : iconRegistry.getIcon(status);
+    }
+
+    /**
+     * Fetches the small test report summary of the finished pipeline in the background, the failed tests of a suite
+     * are only loaded once it is chosen.
+     */
+    private void prefetchTestSummary(PipelineSnapshot snapshot) {
+        pendingTestSummary = TestReportService.getInstance().getSummary(snapshot.gitlabUrl(), snapshot.pipeline())
+                .onErrorResume(e -> Mono.empty())
+                .subscribe(summary -> ApplicationManager.getApplication().invokeLater(() -> {
+                    if (isSamePipeline(currentSnapshot, snapshot)) {
+                        testSummary = summary;
+                    }
+                }, ModalityState.any()));
+    }
+
+    private static boolean isSamePipeline(PipelineSnapshot snapshot, PipelineSnapshot other) {
+        return snapshot != null && other != null && snapshot.pipeline().id() == other.pipeline().id()
+                && snapshot.gitlabUrl().equals(other.gitlabUrl());
+    }
+
+    private void resetTestSummary() {
+        if (pendingTestSummary != null) {
+            pendingTestSummary.dispose();
+            pendingTestSummary = null;
+        }
+        testSummary = TestReportSummary.EMPTY;
+        testSummaryRequested = false;
+    }
+
+    /**
+     * Shows the jobs of the stage and the test counts of the suites its jobs reported.
+     */
+    private void openPopup(MouseEvent e, String stageName) {
+        var component = e.getComponent();
+        var snapshot = latestSnapshot.get();
+        if (snapshot == null) return;
+        var summary = isSamePipeline(snapshot, currentSnapshot) ? testSummary : TestReportSummary.EMPTY;
+        snapshot.stages().stream()
+                .filter(stage -> stage.name().equals(stageName))
+                .findFirst()
+                .ifPresent(stage -> {
+                    var jobIds = stage.jobs().stream().map(PipelineJob::id).collect(Collectors.toSet());
+                    var step = new StageJobsStep(project, snapshot.gitlabUrl(), snapshot.pipeline(), stage.name(), stage.jobs(),
+                            summary.suitesOf(jobIds), id -> {
+                                var latest = latestSnapshot.get();
+                                return latest == null ? null : latest.downstream().get(id);
+                            });
+                    var dataContext = DataManager.getInstance().getDataContext(component);
+                    JBPopupFactory.getInstance().createListPopup(step).showInBestPositionFor(dataContext);
+                });
+    }
+}
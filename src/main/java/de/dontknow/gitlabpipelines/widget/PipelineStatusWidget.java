@@ -3,19 +3,19 @@ package de.dontknow.gitlabpipelines.widget;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.wm.CustomStatusBarWidget;
 import com.intellij.openapi.wm.StatusBar;
-import de.dontknow.gitlabpipelines.gitlab.GitlabProjectConnection;
+import de.dontknow.gitlabpipelines.gitlab.PipelinePollingService;
 import de.dontknow.gitlabpipelines.gitlab.PipelineStatusDisplay;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 
 public class PipelineStatusWidget implements CustomStatusBarWidget {
-    private final GitlabProjectConnection gitlabProjectConnection;
+    private final PipelinePollingService pollingService;
     private final Project project;
     private PipelineStatusDisplay pipelineStatusDisplay;
 
-    public PipelineStatusWidget(GitlabProjectConnection gitlabProjectConnection, @NotNull Project project) {
-        this.gitlabProjectConnection = gitlabProjectConnection;
+    public PipelineStatusWidget(PipelinePollingService pollingService, @NotNull Project project) {
+        this.pollingService = pollingService;
         this.project = project;
     }
 
@@ -41,7 +41,7 @@ public class PipelineStatusWidget implements CustomStatusBarWidget {
     public JComponent getComponent() {
         var root = new JPanel();
         root.setLayout(new BoxLayout(root, BoxLayout.X_AXIS));
-        this.pipelineStatusDisplay = new PipelineStatusDisplay(gitlabProjectConnection);
+        this.pipelineStatusDisplay = new PipelineStatusDisplay(pollingService);
         pipelineStatusDisplay.startWatcher(project, root);
         return root;
     }
@@ -0,0 +1,198 @@
+package de.dontknow.gitlabpipelines.widget;
+
+import com.intellij.ide.BrowserUtil;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.popup.ListSeparator;
+import com.intellij.openapi.ui.popup.PopupStep;
+import com.intellij.openapi.ui.popup.util.BaseListPopupStep;
+import de.dontknow.gitlabpipelines.gitlab.PipelineSnapshot;
+import de.dontknow.gitlabpipelines.gitlab.dto.DownstreamPipeline;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import de.dontknow.gitlabpipelines.gitlab.dto.TestSuiteSummary;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Popup listing the jobs of a stage, built from the snapshot only when the stage is opened. The list popup renders
+ * just the visible rows, and parallel and matrix jobs of the same name are folded into one entry that opens them
+ * as sub list, so stages with hundreds of jobs stay short.
+ */
+class StageJobsStep extends BaseListPopupStep<StageJobsStep.Entry> {
+
+    /**
+     * The suffix gitlab appends to the jobs of {@code parallel: 3} ({@code "rspec 2/3"}) and {@code parallel: matrix}
+     * ({@code "build: [linux, amd64]"}).
+     */
+    private static final Pattern PARALLEL_SUFFIX = Pattern.compile("(?: \\d+/\\d+|: \\[.*])$");
+
+    private final Project project;
+    private final String gitlabUrl;
+    private final PipelineDto pipeline;
+    private final IntFunction<DownstreamPipeline> downstreamOf;
+    /**
+     * The suites follow the jobs, the separator goes above the first one.
+     */
+    private final Entry firstSuite;
+
+    /**
+     * @param gitlabUrl    the instance of the pipeline, downstream pipelines never leave it
+     * @param suites       the test suites reported by the jobs, listed below them
+     * @param downstreamOf the current pipeline triggered by a bridge job id, {@code null} if there is none
+     */
+    StageJobsStep(Project project, String gitlabUrl, PipelineDto pipeline, String title, List<PipelineJob> jobs,
+                  List<TestSuiteSummary> suites, IntFunction<DownstreamPipeline> downstreamOf) {
+        this(project, gitlabUrl, pipeline, title, entriesOf(jobs, suites), downstreamOf);
+    }
+
+    private StageJobsStep(Project project, String gitlabUrl, PipelineDto pipeline, String title, List<Entry> entries,
+                          IntFunction<DownstreamPipeline> downstreamOf) {
+        super(title, entries);
+        this.project = project;
+        this.gitlabUrl = gitlabUrl;
+        this.pipeline = pipeline;
+        this.downstreamOf = downstreamOf;
+        this.firstSuite = entries.stream().filter(SuiteEntry.class::isInstance).findFirst().orElse(null);
+    }
+
+    private static List<Entry> entriesOf(List<PipelineJob> jobs, List<TestSuiteSummary> suites) {
+        var jobsByGroup = new LinkedHashMap<String, List<PipelineJob>>();
+        jobs.forEach(job -> jobsByGroup.computeIfAbsent(groupName(job.name()), name -> new ArrayList<>()).add(job));
+        var entries = new ArrayList<Entry>(jobsByGroup.size() + suites.size());
+        jobsByGroup.forEach((name, groupJobs) -> entries.add(groupJobs.size() == 1 ? new JobEntry(groupJobs.get(0)) : JobGroupEntry.of(name, groupJobs)));
+        suites.forEach(suite -> entries.add(new SuiteEntry(suite)));
+        return entries;
+    }
+
+    static String groupName(String jobName) {
+        return PARALLEL_SUFFIX.matcher(jobName).replaceFirst("");
+    }
+
+    @Override
+    public String getTextFor(Entry entry) {
+        if (entry instanceof JobGroupEntry group) return group.name() + " (" + group.jobs().size() + " jobs)";
+        if (entry instanceof SuiteEntry suiteEntry) {
+            var suite = suiteEntry.suite();
+            if (suite.brokenCount() == 0) return suite.name() + ": " + suite.total_count() + " tests passed";
+            return suite.name() + ": " + suite.brokenCount() + " of " + suite.total_count() + " tests failed";
+        }
+        return ((JobEntry) entry).job().name();
+    }
+
+    @Override
+    public Icon getIconFor(Entry entry) {
+        if (entry instanceof JobGroupEntry group) return group.status().getIcon();
+        if (entry instanceof SuiteEntry suite) return suite.suite().brokenCount() > 0 ? GitlabStatus.failed.getIcon() : GitlabStatus.success.getIcon();
+        return ((JobEntry) entry).job().status().getIcon();
+    }
+
+    @Override
+    public ListSeparator getSeparatorAbove(Entry entry) {
+        return entry == firstSuite ? new ListSeparator("Tests") : null;
+    }
+
+    @Override
+    public boolean hasSubstep(Entry entry) {
+        if (entry instanceof JobGroupEntry) return true;
+        return entry instanceof JobEntry job && downstreamOf.apply(job.job().id()) != null;
+    }
+
+    @Override
+    public PopupStep<?> onChosen(Entry entry, boolean finalChoice) {
+        if (entry instanceof JobGroupEntry group) {
+            return new StageJobsStep(project, gitlabUrl, pipeline, null, group.jobs().stream().<Entry>map(JobEntry::new).toList(), downstreamOf);
+        }
+        if (entry instanceof SuiteEntry suite) {
+            return doFinalStep(() -> FailedTestsStep.show(gitlabUrl, pipeline, suite.suite()));
+        }
+        var job = ((JobEntry) entry).job();
+        var downstream = downstreamOf.apply(job.id());
+        if (downstream != null) return downstreamStep(job, downstream);
+        return doFinalStep(() -> openJob(job));
+    }
+
+    @Override
+    public boolean isSpeedSearchEnabled() {
+        return true;
+    }
+
+    /**
+     * The stages of the pipeline the bridge triggered, looked up when a stage is chosen so they show the latest polled tree.
+     */
+    private PopupStep<?> downstreamStep(PipelineJob bridge, DownstreamPipeline downstream) {
+        Supplier<DownstreamPipeline> current = () -> downstreamOf.apply(bridge.id());
+        return new BaseListPopupStep<>(bridge.name(), PipelineSnapshot.stagesOf(downstream.jobs())) {
+            @Override
+            public String getTextFor(PipelineSnapshot.StageSnapshot stage) {
+                return stage.name();
+            }
+
+            @Override
+            public Icon getIconFor(PipelineSnapshot.StageSnapshot stage) {
+                return stage.status() == null ? null : stage.status().getIcon();
+            }
+
+            @Override
+            public boolean hasSubstep(PipelineSnapshot.StageSnapshot stage) {
+                return true;
+            }
+
+            @Override
+            public PopupStep<?> onChosen(PipelineSnapshot.StageSnapshot stage, boolean finalChoice) {
+                var latest = current.get();
+                var jobs = latest == null ? stage.jobs() : PipelineSnapshot.stagesOf(latest.jobs()).stream()
+                        .filter(latestStage -> latestStage.name().equals(stage.name()))
+                        .findFirst()
+                        .map(PipelineSnapshot.StageSnapshot::jobs)
+                        .orElse(stage.jobs());
+                return new StageJobsStep(project, gitlabUrl, downstream.pipeline(), null, jobs, List.of(), id -> {
+                    var pipeline = current.get();
+                    return pipeline == null ? null : pipeline.downstream().get(id);
+                });
+            }
+
+            @Override
+            public boolean isSpeedSearchEnabled() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Opens the log of the job, the job page in the browser is one click away in the log viewer.
+     */
+    private void openJob(PipelineJob job) {
+        if (project == null || job.pipeline() == null) {
+            BrowserUtil.browse(job.web_url());
+            return;
+        }
+        JobLogViewer.open(project, gitlabUrl, job);
+    }
+
+    sealed interface Entry permits JobEntry, JobGroupEntry, SuiteEntry {
+    }
+
+    record JobEntry(PipelineJob job) implements Entry {
+    }
+
+    /**
+     * The jobs gitlab created from one parallel or matrix job.
+     */
+    record JobGroupEntry(String name, GitlabStatus status, List<PipelineJob> jobs) implements Entry {
+
+        static JobGroupEntry of(String name, List<PipelineJob> jobs) {
+            var status = GitlabStatus.aggregate(jobs.stream().map(PipelineJob::status).toList());
+            return new JobGroupEntry(name, status == null ? jobs.get(0).status() : status, List.copyOf(jobs));
+        }
+    }
+
+    record SuiteEntry(TestSuiteSummary suite) implements Entry {
+    }
+}
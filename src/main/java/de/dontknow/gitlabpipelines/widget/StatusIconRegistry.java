@@ -0,0 +1,88 @@
+package de.dontknow.gitlabpipelines.widget;
+
+import com.intellij.ide.ui.LafManagerListener;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.IconLoader;
+import com.intellij.ui.scale.JBUIScale;
+import com.intellij.util.IconUtil;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+
+import javax.swing.*;
+import java.beans.PropertyChangeListener;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Resolves and scales every icon of the widget once. The icons are dropped when the look and feel
+ * or the ide scale changes and resolved again with the next lookup.
+ */
+public class StatusIconRegistry implements Disposable {
+
+    private static final float ARROW_SCALE = .8f;
+
+    private final PropertyChangeListener scaleListener = event -> invalidate();
+    private volatile Icons icons;
+
+    public StatusIconRegistry() {
+        ApplicationManager.getApplication().getMessageBus().connect(this)
+                .subscribe(LafManagerListener.TOPIC, (LafManagerListener) lafManager -> invalidate());
+        JBUIScale.addUserScaleChangeListener(scaleListener);
+    }
+
+    public static StatusIconRegistry getInstance() {
+        return ApplicationManager.getApplication()
+                .getService(StatusIconRegistry.class);
+    }
+
+    public Icon getIcon(GitlabStatus status) {
+        return icons().status().get(status);
+    }
+
+    /**
+     * Greyed out variant for pipelines that are not confirmed by gitlab yet.
+     */
+    public Icon getStaleIcon(GitlabStatus status) {
+        return icons().stale().get(status);
+    }
+
+    /**
+     * The scaled arrow between two stages.
+     */
+    public Icon getArrowIcon() {
+        return icons().arrow();
+    }
+
+    private Icons icons() {
+        var current = icons;
+        if (current == null) {
+            current = loadIcons();
+            icons = current;
+        }
+        return current;
+    }
+
+    private Icons loadIcons() {
+        var status = new EnumMap<GitlabStatus, Icon>(GitlabStatus.class);
+        var stale = new EnumMap<GitlabStatus, Icon>(GitlabStatus.class);
+        for (var gitlabStatus : GitlabStatus.values()) {
+            var icon = IconLoader.getIcon(gitlabStatus.getIconPath(), GitlabStatus.class.getClassLoader());
+            status.put(gitlabStatus, icon);
+            stale.put(gitlabStatus, IconLoader.getDisabledIcon(icon));
+        }
+        var arrow = IconUtil.scale(IconLoader.getIcon("Icons/arrow-left.svg", StatusIconRegistry.class.getClassLoader()), null, ARROW_SCALE);
+        return new Icons(status, stale, arrow);
+    }
+
+    private void invalidate() {
+        icons = null;
+    }
+
+    @Override
+    public void dispose() {
+        JBUIScale.removeUserScaleChangeListener(scaleListener);
+    }
+
+    private record Icons(Map<GitlabStatus, Icon> status, Map<GitlabStatus, Icon> stale, Icon arrow) {
+    }
+}
@@ -4,7 +4,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.wm.StatusBar;
 import com.intellij.openapi.wm.StatusBarWidget;
 import com.intellij.openapi.wm.StatusBarWidgetFactory;
-import de.dontknow.gitlabpipelines.gitlab.GitlabProjectConnection;
+import de.dontknow.gitlabpipelines.gitlab.PipelinePollingService;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 
@@ -31,8 +31,7 @@ public class StatusWidgetFactory implements StatusBarWidgetFactory {
     @NotNull
     @Override
     public StatusBarWidget createWidget(@NotNull Project project) {
-        var gitlabProjectConnection = new GitlabProjectConnection();
-        return new PipelineStatusWidget(gitlabProjectConnection, project);
+        return new PipelineStatusWidget(PipelinePollingService.getInstance(), project);
     }
 
     @Override
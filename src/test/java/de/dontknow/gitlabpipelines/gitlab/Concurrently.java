@@ -0,0 +1,51 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts tasks on their own threads at the same moment and rethrows the first failure.
+ */
+final class Concurrently {
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private Concurrently() {
+    }
+
+    static void run(List<Task> tasks) throws Exception {
+        var executor = Executors.newFixedThreadPool(tasks.size());
+        var start = new CountDownLatch(1);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (var task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var future : futures) {
+                try {
+                    future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception cause) throw cause;
+                    throw new AssertionError(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    interface Task {
+        void run() throws Exception;
+    }
+}
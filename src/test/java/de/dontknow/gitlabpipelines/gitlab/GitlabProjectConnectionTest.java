@@ -0,0 +1,120 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Conditional GETs against a local stub of the gitlab api.
+ */
+class GitlabProjectConnectionTest {
+
+    private static final int PROJECT_ID = 7;
+    private static final String NO_ETAG = "none";
+
+    private final Queue<String> sentEtags = new ConcurrentLinkedQueue<>();
+    private volatile String pipelineStatus = "running";
+    private volatile boolean failing;
+    private HttpServer server;
+    private GitlabProjectConnection connection;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/v4/projects/" + PROJECT_ID + "/pipelines", this::answerPipelines);
+        server.start();
+        connection = new GitlabProjectConnection("http://localhost:" + server.getAddress().getPort(), "test-token");
+    }
+
+    @AfterEach
+    void stopServer() {
+        connection.close();
+        server.stop(0);
+    }
+
+    @Test
+    void servesAnUnchangedPipelineFromTheCache() {
+        var first = connection.getLatestPipeline(PROJECT_ID, "main").block();
+        var second = connection.getLatestPipeline(PROJECT_ID, "main").block();
+
+        assertEquals(List.of(NO_ETAG, etag()), List.copyOf(sentEtags));
+        assertEquals(new PipelineDto(11, PROJECT_ID, GitlabStatus.running), first);
+        assertSame(first, second, "a 304 returns the parsed pipeline of the first response");
+        assertEquals(1, connection.getResponseCache().getMissCount());
+        assertEquals(1, connection.getResponseCache().getHitCount());
+    }
+
+    @Test
+    void parsesAChangedPipelineAgain() {
+        var first = connection.getLatestPipeline(PROJECT_ID, "main").block();
+        pipelineStatus = "success";
+        var second = connection.getLatestPipeline(PROJECT_ID, "main").block();
+
+        assertNotSame(first, second);
+        assertEquals(new PipelineDto(11, PROJECT_ID, GitlabStatus.success), second);
+        assertEquals(2, connection.getResponseCache().getMissCount());
+        assertEquals(0, connection.getResponseCache().getHitCount());
+    }
+
+    @Test
+    void completesEmptyOnlyIfTheRefHasNoPipeline() {
+        pipelineStatus = null;
+
+        assertNull(connection.getLatestPipeline(PROJECT_ID, "main").block());
+    }
+
+    @Test
+    void failsIfGitlabCouldNotAnswer() {
+        failing = true;
+
+        assertThrows(RuntimeException.class, () -> connection.getLatestPipeline(PROJECT_ID, "main").block());
+        assertEquals(0, connection.getResponseCache().getMissCount(), "a failed request did not touch the cache");
+    }
+
+    private void answerPipelines(HttpExchange exchange) throws IOException {
+        if (failing) {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+            exchange.close();
+            return;
+        }
+        var ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        sentEtags.add(ifNoneMatch == null ? NO_ETAG : ifNoneMatch);
+        var etag = etag();
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (etag.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+            exchange.close();
+            return;
+        }
+        var json = pipelineStatus == null ? "[]" : "[{\"id\":11,\"project_id\":" + PROJECT_ID + ",\"status\":\"" + pipelineStatus + "\"}]";
+        var body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+        try (var responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private String etag() {
+        return "\"" + pipelineStatus + "\"";
+    }
+}
@@ -0,0 +1,110 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineStateStoreTest {
+
+    private static final PipelineDto PIPELINE = new PipelineDto(11, 7, GitlabStatus.running);
+    private static final int JOB_COUNT = 50;
+    private static final int WRITERS = 8;
+    private static final int READERS = 4;
+    private static final int FETCHES_PER_WRITER = 300;
+
+    @Test
+    void keepsEveryJobOfTheLatestFetchUnderConcurrentWriters() throws Exception {
+        var store = new PipelineStateStore();
+        var writersLeft = new AtomicInteger(WRITERS);
+        var tasks = new ArrayList<Concurrently.Task>();
+        for (int i = 0; i < WRITERS; i++) {
+            tasks.add(() -> {
+                try {
+                    for (int fetch = 0; fetch < FETCHES_PER_WRITER; fetch++) {
+                        long sequence = store.beginFetch();
+                        store.updatePipeline(PIPELINE, sequence);
+                        store.updateJobs(jobs(sequence), sequence);
+                        assertConsistent(store.publish());
+                    }
+                } finally {
+                    writersLeft.decrementAndGet();
+                }
+            });
+        }
+        for (int i = 0; i < READERS; i++) {
+            tasks.add(() -> {
+                while (writersLeft.get() > 0) {
+                    var state = store.current();
+                    if (state != null) assertConsistent(state);
+                }
+            });
+        }
+
+        Concurrently.run(tasks);
+
+        long lastSequence = (long) WRITERS * FETCHES_PER_WRITER;
+        var state = store.publish();
+        assertEquals(JOB_COUNT, state.jobs().size());
+        assertTrue(state.jobs().stream().allMatch(job -> job.name().equals(nameOf(lastSequence))),
+                "every job comes from the latest fetch");
+    }
+
+    @Test
+    void aSlowOlderFetchDoesNotOverwriteANewerOne() {
+        var store = new PipelineStateStore();
+        long older = store.beginFetch();
+        long newer = store.beginFetch();
+        store.updatePipeline(PIPELINE, newer);
+        store.updateJobs(jobs(newer), newer);
+        store.updatePipeline(PIPELINE, older);
+        store.updateJobs(jobs(older), older);
+
+        var state = store.publish();
+
+        assertTrue(state.jobs().stream().allMatch(job -> job.name().equals(nameOf(newer))));
+    }
+
+    @Test
+    void dropsJobsMissingFromTheLatestListing() {
+        var store = new PipelineStateStore();
+        long first = store.beginFetch();
+        store.updatePipeline(PIPELINE, first);
+        store.updateJobs(jobs(first), first);
+        long retried = store.beginFetch();
+        var listing = new ArrayList<>(jobs(retried).subList(1, JOB_COUNT));
+        listing.add(new PipelineJob(JOB_COUNT + 1, "test", GitlabStatus.running, nameOf(retried), PIPELINE, null));
+        store.updateJobs(listing, retried);
+
+        var ids = store.publish().jobs().stream().map(PipelineJob::id).toList();
+
+        assertEquals(JOB_COUNT, ids.size());
+        assertTrue(!ids.contains(1) && ids.contains(JOB_COUNT + 1), "the retried job replaced its earlier attempt");
+    }
+
+    private static void assertConsistent(PipelineState state) {
+        var ids = state.jobs().stream().map(PipelineJob::id).toList();
+        assertEquals(ids.size(), ids.stream().distinct().count(), "no job is listed twice");
+        assertTrue(ids.size() <= JOB_COUNT, "no job of another listing shows up");
+        assertTrue(state.jobs().stream().allMatch(job -> job.pipeline().id() == state.pipeline().id()),
+                "all jobs belong to the published pipeline");
+    }
+
+    private static List<PipelineJob> jobs(long sequence) {
+        return IntStream.rangeClosed(1, JOB_COUNT)
+                .mapToObj(id -> new PipelineJob(id, "test", GitlabStatus.running, nameOf(sequence), PIPELINE, null))
+                .toList();
+    }
+
+    private static String nameOf(long sequence) {
+        return "job of fetch " + sequence;
+    }
+}
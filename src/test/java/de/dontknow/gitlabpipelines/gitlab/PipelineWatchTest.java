@@ -0,0 +1,147 @@
+package de.dontknow.gitlabpipelines.gitlab;
+
+import de.dontknow.gitlabpipelines.config.PipelineCacheStorage;
+import de.dontknow.gitlabpipelines.gitlab.dto.BridgeJob;
+import de.dontknow.gitlabpipelines.gitlab.dto.GitlabStatus;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineDto;
+import de.dontknow.gitlabpipelines.gitlab.dto.PipelineJob;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineWatchTest {
+
+    private static final PipelineKey KEY = new PipelineKey("https://gitlab.example.com", 7, "main");
+    private static final int TICKERS = 4;
+    private static final int PUSHERS = 2;
+    private static final int SUBSCRIBERS = 4;
+    private static final int ITERATIONS = 300;
+    private static final int JOB_COUNT = 20;
+
+    @Test
+    void survivesConcurrentTicksPushesAndSubscribes() throws Exception {
+        var transport = new ChangingTransport();
+        var watch = new PipelineWatch(KEY, new PipelineCacheStorage());
+        var received = new ConcurrentLinkedQueue<PipelineState>();
+        var tasks = new ArrayList<Concurrently.Task>();
+        for (int i = 0; i < TICKERS; i++) {
+            tasks.add(() -> {
+                for (int tick = 0; tick < ITERATIONS; tick++) {
+                    watch.poll(transport).block();
+                }
+            });
+        }
+        for (int i = 0; i < PUSHERS; i++) {
+            tasks.add(() -> {
+                for (int push = 0; push < ITERATIONS; push++) {
+                    watch.wakeUp();
+                }
+            });
+        }
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            tasks.add(() -> {
+                for (int subscribe = 0; subscribe < ITERATIONS; subscribe++) {
+                    var subscriber = new RecordingSubscriber(received);
+                    watch.addSubscriber(subscriber);
+                    watch.removeSubscriber(subscriber);
+                }
+            });
+        }
+
+        Concurrently.run(tasks);
+
+        assertEquals(1, transport.maxConcurrentPolls.get(), "ticks of one watch never poll at the same time");
+        assertTrue(received.stream().allMatch(PipelineWatchTest::isConsistent), "every delivered state is complete");
+
+        watch.wakeUp();
+        watch.poll(transport).block();
+        var latest = new ConcurrentLinkedQueue<PipelineState>();
+        watch.addSubscriber(new RecordingSubscriber(latest));
+        var state = latest.peek();
+        assertNotNull(state);
+        assertEquals(transport.latestPipeline(), state.pipeline());
+        assertEquals(Set.copyOf(transport.latestJobs()), Set.copyOf(state.jobs()));
+    }
+
+    private static boolean isConsistent(PipelineState state) {
+        if (state.pipeline() == null) return state.jobs().isEmpty();
+        var ids = state.jobs().stream().map(PipelineJob::id).toList();
+        return ids.size() == JOB_COUNT && ids.stream().distinct().count() == JOB_COUNT
+                && state.jobs().stream().allMatch(job -> job.pipeline().equals(state.pipeline()));
+    }
+
+    /**
+     * Gitlab answering with a new pipeline or new job states on every poll.
+     */
+    private static final class ChangingTransport implements PipelineTransport {
+
+        private final AtomicInteger version = new AtomicInteger();
+        private final AtomicInteger activePolls = new AtomicInteger();
+        private final AtomicInteger maxConcurrentPolls = new AtomicInteger();
+
+        @Override
+        public Mono<PipelineDto> getLatestPipeline(long projectId, String ref) {
+            return Mono.fromCallable(() -> {
+                maxConcurrentPolls.accumulateAndGet(activePolls.incrementAndGet(), Math::max);
+                version.incrementAndGet();
+                return latestPipeline();
+            });
+        }
+
+        @Override
+        public Mono<List<PipelineJob>> getJobsFromPipeline(PipelineDto pipelineDto) {
+            return Mono.fromCallable(() -> {
+                activePolls.decrementAndGet();
+                return latestJobs();
+            });
+        }
+
+        @Override
+        public Mono<List<BridgeJob>> getBridges(PipelineDto pipelineDto) {
+            return Mono.just(List.of());
+        }
+
+        PipelineDto latestPipeline() {
+            // a new pipeline every third poll, job updates of the same pipeline in between
+            return new PipelineDto(100 + version.get() / 3, (int) KEY.projectId(), GitlabStatus.running);
+        }
+
+        List<PipelineJob> latestJobs() {
+            var pipeline = latestPipeline();
+            var status = version.get() % 2 == 0 ? GitlabStatus.running : GitlabStatus.success;
+            return IntStream.range(0, JOB_COUNT)
+                    .mapToObj(index -> new PipelineJob(pipeline.id() * 1000 + index, "test", status, "job " + index, pipeline, null))
+                    .toList();
+        }
+    }
+
+    private static final class RecordingSubscriber implements PipelineSubscriber {
+
+        private final Queue<PipelineState> received;
+
+        RecordingSubscriber(Queue<PipelineState> received) {
+            this.received = received;
+        }
+
+        @Override
+        public void onUpdate(PipelineState state) {
+            received.add(state);
+        }
+
+        @Override
+        public PollingPriority getPollingPriority() {
+            return PollingPriority.FOREGROUND;
+        }
+    }
+}